@@ -0,0 +1,103 @@
+/* ActivityProfile.java
+ * Counts of simulation activity per gate and wire
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The activity profile counts, during timed simulation with Gate, Wire
+ *  and Simulator, the input changes reaching each gate, the output
+ *  changes of each gate, and the changes delivered by each wire, in
+ *  arrays indexed by the gate and wire numbers Logic gives them.  The
+ *  events a gate causes are the deliveries on all its outgoing wires,
+ *  its output changes multiplied by its fan-out, each of which is an
+ *  input change of another gate; the report lists the gates causing
+ *  the most, where high activity meets large fan-out.
+ *
+ *  The counting methods are called only when profiling is on, so when
+ *  it is off the cost is one test of a static flag per event.
+ *  @see Logic
+ *  @see Gate
+ *  @see Wire
+ */
+final class ActivityProfile {
+    static boolean on = false;		// tested before each count
+
+    private static long[] inputs;	// input changes, by gate
+    private static long[] changes;	// output changes, by gate
+    private static long[] caused;	// deliveries of outgoing wires, by gate
+    private static long[] delivered;	// changes delivered, by wire
+
+    private ActivityProfile() {}
+
+    /** turn off and forget the counts, so another simulation can
+     *  start, as in Batch
+     */
+    static void reset() {
+	on = false;
+	inputs = null;
+	changes = null;
+	caused = null;
+	delivered = null;
+    }
+
+    /** start profiling
+     *  @param gates the number of gates
+     *  @param wires the number of wires
+     */
+    static void start( int gates, int wires ) {
+	inputs = new long[gates];
+	changes = new long[gates];
+	caused = new long[gates];
+	delivered = new long[wires];
+	on = true;
+    }
+
+    /** count a change delivered by a wire
+     *  @param w the wire
+     */
+    static void delivered( Wire w ) {
+	delivered[w.id]++;
+	caused[w.source().id]++;
+	inputs[w.destination().id]++;
+    }
+
+    /** count an output change of a gate
+     *  @param g the gate
+     */
+    static void changed( Gate g ) {
+	changes[g.id]++;
+    }
+
+    /** print the gates causing the most events, with their counts
+     *  @param gates all the gates, in the order they were numbered
+     *  @param wires all the wires
+     *  @param top the number of gates to print
+     */
+    static void report( List <Gate> gates, List <Wire> wires, int top ) {
+	int[] fanout = new int[gates.size()];
+	long total = 0;
+	for (Wire w: wires) {
+	    fanout[w.source().id]++;
+	    total = total + delivered[w.id];
+	}
+
+	List <Gate> order = new ArrayList <Gate> ( gates );
+	order.sort( (Gate a, Gate b) -> (caused[a.id] != caused[b.id])
+	    ? Long.compare( caused[b.id], caused[a.id] )
+	    : Integer.compare( a.id, b.id )
+	);
+	System.out.println(
+	    "-- " + total + " wire deliveries, top " + Math.min( top, gates.size() )
+	    + " gates by events caused: caused changes fanout inputs"
+	);
+	for (Gate g: order.subList( 0, Math.min( top, order.size() ) )) {
+	    System.out.println(
+		g.name + " " + caused[g.id] + " " + changes[g.id] + " "
+		+ fanout[g.id] + " " + inputs[g.id]
+	    );
+	}
+    }
+}
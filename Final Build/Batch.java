@@ -0,0 +1,337 @@
+/* Batch.java
+ * Runs many simulations in one JVM, each in isolation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Batch mode reads a manifest with one simulation per line, each line
+ *  holding the command line arguments of Logic, options then a netlist
+ *  file, and runs every simulation on a thread of its own.  Blank
+ *  lines and lines starting with -- are ignored.  Each simulation
+ *  writes what it prints, output and errors alike, to the netlist file's
+ *  name with .out added, and one line per simulation reports how it
+ *  ended and how long it took, in manifest order.  Every simulation
+ *  must end, so circuits that oscillate need the -end option.
+ *
+ *  Logic and the classes it uses keep the circuit in static variables,
+ *  so each simulation running at once has its own copies of them, from
+ *  its own class loader, sharing only the class file bytes.  A loader
+ *  whose simulation ended normally is used again, after Logic.reset
+ *  puts its static variables back as they were.  System.out and System.err
+ *  are replaced by streams that send each thread's output to the file
+ *  of its simulation, and Errors.fatal throws Abort instead of exiting.
+ *  Threads a simulation starts print to its file too, but the workers
+ *  of a fork join pool can be started by one another, so pools must
+ *  make them with the factory from workers.
+ *
+ *  Simulations run on virtual threads when VirtualThreads, which needs
+ *  JDK 21, has been compiled, and on a pool of platform threads when it
+ *  has not, so the rest of the program builds on older JDKs.
+ *  @see Logic
+ *  @see Errors
+ */
+public class Batch {
+    // exception thrown by Errors.fatal in place of exiting; public,
+    // since each simulation's Errors is in a package of its own loader
+    public static class Abort extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public Abort( String message ) {
+	    super( message );
+	}
+    }
+
+    // where the current thread's simulation prints, null outside batch
+    // simulations; threads a simulation starts inherit it
+    private static final InheritableThreadLocal <PrintStream> output
+	= new InheritableThreadLocal <PrintStream> ();
+
+    // the class files of the program, read once, shared by all loaders
+    private static final ConcurrentHashMap <String, byte[]> classFiles
+	= new ConcurrentHashMap <String, byte[]> ();
+
+    // the loaders not in use, whose simulations ended normally
+    private static final ConcurrentLinkedQueue <Isolated> loaders
+	= new ConcurrentLinkedQueue <Isolated> ();
+
+    // how many simulations run at once; they are mostly computation
+    private static final int RUNNING
+	= 2 * Runtime.getRuntime().availableProcessors();
+
+    /** @return true if the current thread belongs to a batch simulation
+     */
+    public static boolean inJob() {
+	return output.get() != null;
+    }
+
+    /** make the worker threads of a fork join pool started by the
+     *  current thread, so that they print where it prints, and, in a
+     *  batch simulation, throw Abort on fatal errors instead of exiting
+     *  @return the factory
+     */
+    public static ForkJoinPool.ForkJoinWorkerThreadFactory workers() {
+	final PrintStream s = output.get();
+	return pool -> new ForkJoinWorkerThread( pool ) {
+	    protected void onStart() {
+		super.onStart();
+		if (s != null) output.set( s );
+	    }
+	};
+    }
+
+    /** A class loader giving one simulation its own copies of the classes
+     *  of the program, all those in the unnamed package except Batch
+     */
+    private static final class Isolated extends ClassLoader {
+	Isolated() {
+	    super( Batch.class.getClassLoader() );
+	}
+
+	protected Class <?> loadClass( String name, boolean resolve )
+	    throws ClassNotFoundException
+	{
+	    synchronized (getClassLoadingLock( name )) {
+		Class <?> c = findLoadedClass( name );
+		if ((c == null) && isolated( name )) {
+		    byte[] b = classFile( name );
+		    if (b != null) c = defineClass( name, b, 0, b.length );
+		}
+		if (c == null) return super.loadClass( name, resolve );
+		if (resolve) resolveClass( c );
+		return c;
+	    }
+	}
+
+	/** @param name a class name
+	 *  @return true if each simulation needs its own copy of the class
+	 */
+	private static boolean isolated( String name ) {
+	    return (name.indexOf( '.' ) < 0)
+		&& !name.equals( "Batch" ) && !name.startsWith( "Batch$" );
+	}
+
+	/** @param name a class name
+	 *  @return the bytes of its class file, or null if there is none
+	 */
+	private byte[] classFile( String name ) {
+	    return classFiles.computeIfAbsent( name, n -> {
+		try (InputStream in = getParent().getResourceAsStream( n + ".class" )) {
+		    return (in == null) ? null : in.readAllBytes();
+		} catch (IOException e) {
+		    return null;
+		}
+	    } );
+	}
+    }
+
+    /** An output stream passing bytes to the current thread's
+     *  simulation output, or to the original stream outside batch
+     *  simulations
+     */
+    private static final class Route extends OutputStream {
+	private final PrintStream original;
+
+	Route( PrintStream original ) {
+	    this.original = original;
+	}
+
+	PrintStream target() {
+	    PrintStream s = output.get();
+	    return (s == null) ? original : s;
+	}
+
+	public void write( int b ) {
+	    target().write( b );
+	}
+
+	public void write( byte[] b, int off, int len ) {
+	    target().write( b, off, len );
+	}
+
+	public void flush() {
+	    target().flush();
+	}
+    }
+
+    /** The replacement for System.out and System.err; the common print
+     *  methods go straight to the current thread's stream, the others
+     *  reach it byte by byte through the Route
+     */
+    private static final class Router extends PrintStream {
+	private final Route route;
+
+	Router( Route route ) {
+	    super( route, true );
+	    this.route = route;
+	}
+
+	public void print( String s ) {
+	    route.target().print( s );
+	}
+
+	public void println() {
+	    route.target().println();
+	}
+
+	public void println( String s ) {
+	    route.target().println( s );
+	}
+
+	public void println( Object o ) {
+	    route.target().println( o );
+	}
+
+	public void flush() {
+	    route.target().flush();
+	}
+    }
+
+    /** Run one simulation
+     *  @param args its command line
+     *  @return the line reporting how it went
+     */
+    private static String job( String[] args ) {
+	String file = Logic.fileName( args );
+	if (file == null) {
+	    return String.join( " ", args ) + " no single netlist file";
+	} else if (!new File( file ).canRead()) {
+	    return file + " can't read " + file;
+	}
+	PrintStream out;
+	try {
+	    out = new PrintStream( new BufferedOutputStream(
+		new FileOutputStream( file + ".out" )
+	    ) );
+	} catch (FileNotFoundException e) {
+	    return file + " can't write " + file + ".out";
+	}
+
+	String result;
+	long start = System.nanoTime();
+	output.set( out );
+	Isolated loader = loaders.poll();
+	if (loader == null) loader = new Isolated();
+	try {
+	    Class <?> logic = loader.loadClass( "Logic" );
+	    logic.getMethod( "reset" ).invoke( null );
+	    logic.getMethod( "main", String[].class )
+		.invoke( null, (Object)args );
+	    int errors = (Integer)loader.loadClass( "Errors" )
+		.getMethod( "count" ).invoke( null );
+	    result = (errors == 0) ? "ok" : errors + " errors";
+	    loaders.add( loader );
+	} catch (InvocationTargetException e) {
+	    // after other failures, threads of the simulation may live on
+	    Throwable cause = e.getCause();
+	    if (cause instanceof Abort) {
+		result = "fatal error, " + cause.getMessage();
+		loaders.add( loader );
+	    } else {
+		result = "failed, " + cause;
+	    }
+	} catch (ReflectiveOperationException e) {
+	    result = "failed, " + e;
+	} finally {
+	    output.remove();
+	    out.close();
+	}
+	double ms = (System.nanoTime() - start) / 1e6;
+	return file + " " + result + " " + String.format( "%.3f", ms ) + " ms";
+    }
+
+    /** @return an executor with a virtual thread per task, see
+     *  VirtualThreads, or a pool of platform threads if it can't be loaded
+     */
+    private static ExecutorService executor() {
+	try {
+	    return (ExecutorService)Class.forName( "VirtualThreads" )
+		.getDeclaredMethod( "executor" ).invoke( null );
+	} catch (Exception | LinkageError e) {
+	    return Executors.newFixedThreadPool( RUNNING );
+	}
+    }
+
+    /** Run the simulations of a manifest and report on each
+     *  @param args Logic's command line, including -batch and the
+     *  manifest, with options that apply to every simulation
+     */
+    public static void run( String[] args ) {
+	List <String> shared = new ArrayList <String> ( Arrays.asList( args ) );
+	int b = shared.indexOf( "-batch" );
+	if (b + 1 >= shared.size()) Errors.fatal( "Missing value: -batch" );
+	String manifest = shared.get( b + 1 );
+	shared.subList( b, b + 2 ).clear();
+
+	List <String[]> jobs = new ArrayList <String[]> ();
+	try (Scanner sc = new Scanner( new File( manifest ) )) {
+	    while (sc.hasNextLine()) {
+		String line = sc.nextLine().trim();
+		if (line.isEmpty() || line.startsWith( "--" )) continue;
+		List <String> job = new ArrayList <String> ( shared );
+		job.addAll( Arrays.asList( line.split( "\\s+" ) ) );
+		jobs.add( job.toArray( new String[0] ) );
+	    }
+	} catch (FileNotFoundException e) {
+	    Errors.fatal( "Can't open the manifest" );
+	}
+
+	PrintStream out = System.out;
+	PrintStream err = System.err;
+	System.setOut( new Router( new Route( out ) ) );
+	System.setErr( new Router( new Route( err ) ) );
+
+	Semaphore running = new Semaphore( RUNNING );
+	long start = System.nanoTime();
+	ExecutorService pool = executor();
+	try {
+	    List <Future <String>> results = new ArrayList <Future <String>> ();
+	    for (String[] job: jobs) {
+		results.add( pool.submit( () -> {
+		    running.acquire();
+		    try {
+			return job( job );
+		    } finally {
+			running.release();
+		    }
+		} ) );
+	    }
+	    for (Future <String> f: results) out.println( f.get() );
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} catch (ExecutionException e) {
+	    throw new RuntimeException( e.getCause() );
+	} finally {
+	    pool.shutdown();
+	    System.setOut( out );
+	    System.setErr( err );
+	}
+	double ms = (System.nanoTime() - start) / 1e6;
+	out.println(
+	    "-- " + jobs.size() + " simulations in "
+	    + String.format( "%.3f", ms ) + " ms"
+	);
+    }
+}
@@ -0,0 +1,413 @@
+/* Bench.java
+ * Throughput benchmarks of the simulator core
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Benchmarks of the parts of the simulator that decide its speed, run
+ *  on synthetic circuits of several sizes:
+ *  parse, reading a circuit description with Logic.readCircuit;
+ *  queue, scheduling and triggering Simulator events, with a fixed
+ *  number pending as each triggered event schedules another;
+ *  eval, evaluating netlist gates from their input pins;
+ *  simulate, timed simulation with Gate, Wire and Simulator;
+ *  netlist, the same with the sequential netlist engine.
+ *
+ *  Like JMH, each benchmark runs warmup iterations, whose results are
+ *  discarded, then measured iterations, each repeating the operation
+ *  for a fixed time, and reports the mean rate with its standard
+ *  deviation.  JMH itself can't be used, since its generated code must
+ *  import the benchmarked classes, and classes in the unnamed package
+ *  can't be imported; besides, there is no build to add it to.  Unlike
+ *  JMH, all benchmarks share one JVM, so run one at a time, by naming
+ *  it, for the most dependable numbers.
+ *
+ *  usage: java Bench [options] [benchmark...]
+ *  -size n adds a circuit size, in gates, default 1000 and 10000
+ *  -warmup n sets the number of warmup iterations, default 3
+ *  -iterations n sets the number of measured iterations, default 5
+ *  -time ms sets the time of each iteration, default 1000
+ *  -seed s sets the seed of the synthetic circuits, default 1
+ *  -json file writes the results to the file, in JSON
+ *  @see Logic
+ *  @see Simulator
+ *  @see LogicalProcess
+ */
+public class Bench {
+    // all results are consumed here, so no work can be optimized away
+    static long sink = 0;
+
+    /** A benchmark, an operation whose rate is measured in units/s
+     */
+    private static abstract class Benchmark {
+	final String name;
+	final String unit;
+
+	Benchmark( String name, String unit ) {
+	    this.name = name;
+	    this.unit = unit;
+	}
+
+	/** set up for a circuit size, not timed
+	 *  @param size the number of gates
+	 *  @param text the synthetic circuit's description
+	 */
+	abstract void setup( int size, String text );
+
+	/** get ready for the next operation, not timed
+	 */
+	void prepare() {}
+
+	/** do the operation, timed
+	 *  @return the number of units of work done
+	 */
+	abstract long operation();
+    }
+
+    /** An event of the queue benchmark that, when triggered, schedules
+     *  another a random time later
+     */
+    private static final class Hold extends Simulator.Event {
+	final Random random;
+
+	Hold( float t, Random random ) {
+	    super( t );
+	    this.random = random;
+	}
+
+	void trigger() {
+	    Simulator.schedule( new Hold( time + random.nextFloat(), random ) );
+	}
+    }
+
+    /** @return all the benchmarks, in the order they run */
+    private static Benchmark[] benchmarks() {
+	return new Benchmark[] {
+	    new Benchmark( "parse", "lines/s" ) {
+		String text;
+		long lines;
+
+		void setup( int size, String text ) {
+		    this.text = text;
+		    lines = text.chars().filter( c -> c == '\n' ).count();
+		}
+
+		void prepare() {
+		    Logic.clear();
+		}
+
+		long operation() {
+		    Logic.readCircuit( new Scanner( text ) );
+		    return lines;
+		}
+	    },
+
+	    new Benchmark( "queue", "events/s" ) {
+		int size;
+		Random random = new Random( 1 );
+
+		void setup( int size, String text ) {
+		    this.size = size;
+		}
+
+		void prepare() {
+		    Simulator.clear();
+		    for (int i = 0; i < size; i++) {
+			Simulator.schedule( new Hold( random.nextFloat(), random ) );
+		    }
+		}
+
+		long operation() {
+		    return Simulator.run( Float.POSITIVE_INFINITY, 16L * size );
+		}
+	    },
+
+	    new Benchmark( "eval", "gates/s" ) {
+		LogicalProcess lp;
+		Random random = new Random( 1 );
+
+		void setup( int size, String text ) {
+		    Netlist net = parse( text );
+		    lp = new LogicalProcess(
+			net, new GateState( net, 1 ), 0, null, Float.POSITIVE_INFINITY
+		    );
+		}
+
+		void prepare() {
+		    boolean[] pin = lp.state.pin;
+		    for (int i = 0; i < pin.length; i++) pin[i] = random.nextBoolean();
+		}
+
+		long operation() {
+		    int n = lp.net.gateCount;
+		    long count = 0;
+		    for (int r = 0; r < 16; r++) {
+			for (int g = 0; g < n; g++) if (lp.evaluate( g )) count++;
+		    }
+		    sink = sink + count;
+		    return 16L * n;
+		}
+	    },
+
+	    new Benchmark( "simulate", "events/s" ) {
+		String text;
+
+		void setup( int size, String text ) {
+		    this.text = text;
+		}
+
+		void prepare() {
+		    Simulator.clear();
+		    Logic.clear();
+		    Logic.readCircuit( new Scanner( text ) );
+		    Logic.sanityCheck();
+		}
+
+		long operation() {
+		    return Simulator.run( END_TIME, Long.MAX_VALUE );
+		}
+	    },
+
+	    new Benchmark( "netlist", "events/s" ) {
+		Netlist net;
+		long seed = 0;
+		LogicalProcess lp;
+		long count;
+
+		void setup( int size, String text ) {
+		    net = parse( text );
+		}
+
+		void prepare() {
+		    count = 0;
+		    lp = new LogicalProcess(
+			net, new GateState( net, seed++ ), 0, null, END_TIME
+		    ) {
+			void process( NetEvent e ) {
+			    count++;
+			    super.process( e );
+			}
+		    };
+		    lp.initialize();
+		}
+
+		long operation() {
+		    lp.run();
+		    return count;
+		}
+	    },
+	};
+    }
+
+    // how long the synthetic circuits are simulated
+    private static final float END_TIME = 20.0f;
+
+    /** @param text a circuit description
+     *  @return its netlist
+     */
+    private static Netlist parse( String text ) {
+	Logic.clear();
+	Logic.readCircuit( new Scanner( text ) );
+	Netlist net = Logic.netlist();
+	Logic.clear();
+	return net;
+    }
+
+    /** make a synthetic circuit, ring oscillators of 5 not gates, one
+     *  per 64 gates, driving random and, or and not gates, each taking
+     *  its inputs from the 64 gates before it
+     *  @param size the number of gates
+     *  @param seed the seed of the random choices
+     *  @return the circuit description
+     */
+    static String circuit( int size, long seed ) {
+	Random random = new Random( seed );
+	StringBuilder gates = new StringBuilder();
+	StringBuilder wires = new StringBuilder();
+	int rings = Math.max( 1, size / 64 );
+	for (int r = 0; r < rings; r++) {
+	    for (int i = 0; i < 5; i++) {
+		gates.append( "gate G" + (5 * r + i) + " not 1.0\n" );
+		wires.append( "wire G" + (5 * r + i) + " out G"
+		    + (5 * r + ((i + 1) % 5)) + " in 0.5\n" );
+	    }
+	}
+	for (int g = 5 * rings; g < size; g++) {
+	    int kind = random.nextInt( 5 );
+	    // the netlist reader wants a decimal point in every locale
+	    String delay = String.format(
+		Locale.ROOT, "%.2f", 0.5 + 2.5 * random.nextFloat()
+	    );
+	    if (kind == 0) {
+		gates.append( "gate G" + g + " not " + delay + "\n" );
+		wires.append( source( g, random ) + " G" + g + " in 0.5\n" );
+	    } else {
+		gates.append( "gate G" + g + ((kind < 3) ? " and " : " or ")
+		    + delay + "\n" );
+		wires.append( source( g, random ) + " G" + g + " in1 0.5\n" );
+		wires.append( source( g, random ) + " G" + g + " in2 0.5\n" );
+	    }
+	}
+	return gates.append( wires ).toString();
+    }
+
+    /** @param g a gate of the synthetic circuit
+     *  @param random the random choices
+     *  @return the start of a wire to g from one of the 64 gates before it
+     */
+    private static String source( int g, Random random ) {
+	return "wire G" + Math.max( 0, g - 1 - random.nextInt( 64 ) ) + " out";
+    }
+
+    /** run a benchmark on one circuit size
+     *  @param b the benchmark
+     *  @param time the time of each iteration, in nanoseconds
+     *  @param warmup the number of warmup iterations
+     *  @param scores the rate of each measured iteration, filled in
+     */
+    private static void measure(
+	Benchmark b, long time, int warmup, double[] scores
+    ) {
+	for (int i = -warmup; i < scores.length; i++) {
+	    long units = 0;
+	    long elapsed = 0;
+	    while (elapsed < time) {
+		b.prepare();
+		long start = System.nanoTime();
+		units = units + b.operation();
+		elapsed = elapsed + (System.nanoTime() - start);
+	    }
+	    if (i >= 0) scores[i] = units / (elapsed / 1e9);
+	}
+    }
+
+    /** @param args the command line
+     *  @param i the index of an option
+     *  @return the value following it
+     */
+    private static long option( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    return Long.parseLong( args[i + 1] );
+	} catch (NumberFormatException e) {
+	    Errors.fatal( "Number expected: " + args[i] + " " + args[i + 1] );
+	    return 0; // never reached, fatal never returns
+	}
+    }
+
+    /** Main program, see above for usage
+     */
+    public static void main( String[] args ) {
+	List <Integer> sizes = new ArrayList <Integer> ();
+	List <String> names = new ArrayList <String> ();
+	int warmup = 3;
+	int iterations = 5;
+	long time = 1000;
+	long seed = 1;
+	String jsonFile = null;
+
+	for (int i = 0; i < args.length; i++) {
+	    String arg = args[i];
+	    if ("-size".equals( arg )) {
+		sizes.add( (int)option( args, i ) );
+		i = i + 1;
+	    } else if ("-warmup".equals( arg )) {
+		warmup = (int)option( args, i );
+		i = i + 1;
+	    } else if ("-iterations".equals( arg )) {
+		iterations = Math.max( 1, (int)option( args, i ) );
+		i = i + 1;
+	    } else if ("-time".equals( arg )) {
+		time = option( args, i );
+		i = i + 1;
+	    } else if ("-seed".equals( arg )) {
+		seed = option( args, i );
+		i = i + 1;
+	    } else if ("-json".equals( arg ) && (i + 1 < args.length)) {
+		i = i + 1;
+		jsonFile = args[i];
+	    } else if (arg.startsWith( "-" )) {
+		Errors.fatal( "Unknown option: " + arg );
+	    } else {
+		names.add( arg );
+	    }
+	}
+	if (sizes.isEmpty()) {
+	    sizes.add( 1000 );
+	    sizes.add( 10000 );
+	}
+
+	List <Benchmark> chosen = new ArrayList <Benchmark> ();
+	for (Benchmark b: benchmarks()) {
+	    if (names.isEmpty() || names.remove( b.name )) chosen.add( b );
+	}
+	for (String name: names) Errors.fatal( "Unknown benchmark: " + name );
+
+	// what the simulations print is not part of the results
+	PrintStream out = System.out;
+	System.setOut( new PrintStream( OutputStream.nullOutputStream() ) );
+
+	StringBuilder json = new StringBuilder();
+	json.append( "{\n  \"jvm\": \"" + System.getProperty( "java.vm.name" )
+	    + " " + System.getProperty( "java.vm.version" ) + "\",\n" );
+	json.append( "  \"processors\": "
+	    + Runtime.getRuntime().availableProcessors() + ",\n" );
+	json.append( "  \"results\": [" );
+	String separator = "\n";
+	try {
+	    for (Benchmark b: chosen) {
+		for (int size: sizes) {
+		    b.setup( size, circuit( size, seed ) );
+		    double[] scores = new double[iterations];
+		    measure( b, time * 1000000, warmup, scores );
+
+		    double mean = 0.0;
+		    double min = Double.POSITIVE_INFINITY;
+		    double max = 0.0;
+		    for (double s: scores) {
+			mean = mean + s / iterations;
+			min = Math.min( min, s );
+			max = Math.max( max, s );
+		    }
+		    double var = 0.0;
+		    for (double s: scores) var = var + (s - mean) * (s - mean);
+		    double dev = (iterations > 1)
+			? Math.sqrt( var / (iterations - 1) ) : 0.0;
+
+		    out.println( String.format( Locale.ROOT,
+			"%-9s %7d %14.0f +- %12.0f %s",
+			b.name, size, mean, dev, b.unit
+		    ) );
+		    json.append( separator + "    {\"benchmark\": \"" + b.name
+			+ "\", \"size\": " + size + ", \"unit\": \"" + b.unit
+			+ "\", \"mean\": " + mean + ", \"stddev\": " + dev
+			+ ", \"min\": " + min + ", \"max\": " + max
+			+ ", \"scores\": " + java.util.Arrays.toString( scores )
+			+ "}"
+		    );
+		    separator = ",\n";
+		}
+	    }
+	} finally {
+	    System.setOut( out );
+	}
+	json.append( "\n  ]\n}\n" );
+
+	if (jsonFile != null) {
+	    try (PrintStream f = new PrintStream( jsonFile )) {
+		f.print( json );
+	    } catch (FileNotFoundException e) {
+		Errors.fatal( "Can't write the JSON file" );
+	    }
+	}
+    }
+}
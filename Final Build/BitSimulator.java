@@ -0,0 +1,273 @@
+/* BitSimulator.java
+ * Bit-parallel zero-delay simulation of combinational circuits
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Bit-parallel simulation evaluates many input vectors at once.  Each
+ *  signal is held in one or more long words, called lanes, where bit b
+ *  of lane w holds the signal's value for pattern 64*w+b; every gate then
+ *  evaluates all the patterns with a few bitwise operations per lane.
+ *  @see CycleSimulator
+ *  @see Levelized
+ */
+public class BitSimulator {
+    private final Levelized lev;
+    private final Netlist net;
+
+    /** the number of long words per signal */
+    public final int lanes;
+
+    // the values of gate g are in v[g*lanes .. g*lanes+lanes-1],
+    // followed by one signal that is always false, for unused pins
+    private final long[] v;
+
+    // the kernel that evaluates runs of gates
+    private final WordKernel kernel;
+
+    // the gates grouped into runs, in level order, where all the gates
+    // of a run are on the same level and have the same kind and arity;
+    // the arguments for WordKernel.run, one entry per run
+    private final int[] runOp;
+    private final int[] runArity;
+    private final long[] runOutMask;
+    private final int[][] runDst;
+    private final int[][] runSrc;
+    private final long[][] runMask;
+    private final long[][] runTable;	// truth tables, for lut gates
+
+    // the operator for runs of lut gates, which no kernel handles
+    private static final int TABLE = -1;
+
+    /** Construct a bit-parallel simulator with the plain Java kernel
+     *  @param lev the levelized circuit
+     *  @param lanes the number of long words per signal, so each pass
+     *  evaluates 64*lanes patterns
+     */
+    public BitSimulator( Levelized lev, int lanes ) {
+	this( lev, lanes, false );
+    }
+
+    /** Construct a bit-parallel simulator
+     *  @param lev the levelized circuit
+     *  @param lanes the number of long words per signal, so each pass
+     *  evaluates 64*lanes patterns
+     *  @param simd true to use the SIMD kernel, if it can be loaded
+     */
+    public BitSimulator( Levelized lev, int lanes, boolean simd ) {
+	this.lev = lev;
+	this.net = lev.net;
+	this.lanes = lanes;
+	this.v = new long[(net.gateCount + 1) * lanes];
+	this.kernel = simd ? kernel() : new ScalarKernel();
+
+	java.util.ArrayList <int[]> runs = group();
+	int n = runs.size();
+	runOp = new int[n];
+	runArity = new int[n];
+	runOutMask = new long[n];
+	runDst = new int[n][];
+	runSrc = new int[n][];
+	runMask = new long[n][];
+	runTable = new long[n][];
+	for (int r = 0; r < n; r++) {
+	    int[] gates = runs.get( r );
+	    int count = gates.length;
+	    int g0 = gates[0];
+	    int arity = net.arity( g0 );
+	    runArity[r] = arity;
+	    if (net.kind[g0] == Netlist.LUT) {
+		runOp[r] = TABLE;
+		runTable[r] = new long[count];
+		for (int k = 0; k < count; k++) {
+		    runTable[r][k] = net.table[gates[k]];
+		}
+	    } else if ((net.kind[g0] == Netlist.OR) || (net.kind[g0] == Netlist.NOR)) {
+		runOp[r] = WordKernel.OR;
+	    } else if ((net.kind[g0] == Netlist.XOR) || (net.kind[g0] == Netlist.XNOR)) {
+		runOp[r] = WordKernel.XOR;
+	    } else {
+		runOp[r] = WordKernel.AND;
+	    }
+	    if ((net.kind[g0] == Netlist.NAND) || (net.kind[g0] == Netlist.NOR)
+	    ||  (net.kind[g0] == Netlist.XNOR)) {
+		runOutMask[r] = -1L;
+	    }
+	    runDst[r] = new int[count];
+	    runSrc[r] = new int[count * arity];
+	    runMask[r] = new long[count * arity];
+	    for (int k = 0; k < count; k++) {
+		int g = gates[k];
+		runDst[r][k] = g * lanes;
+		for (int s = 0; s < arity; s++) {
+		    int lit = net.fanin[net.faninStart[g] + s];
+		    if (net.kind[g] == Netlist.NOT) lit = lit ^ 1;
+		    if (lit == Netlist.NONE) {
+			runSrc[r][s * count + k] = net.gateCount * lanes;
+		    } else {
+			runSrc[r][s * count + k] = (lit >> 1) * lanes;
+			runMask[r][s * count + k] = -(long)(lit & 1);
+		    }
+		}
+	    }
+	}
+    }
+
+    /** group the gates into runs
+     *  a not gate is evaluated as a one input and of its complemented input,
+     *  nand, nor and xnor gates as and, or and xor gates with complemented
+     *  outputs, and a buf gate as a one input and
+     *  @return the gates of each run, in the order they must be evaluated
+     */
+    private java.util.ArrayList <int[]> group() {
+	java.util.ArrayList <int[]> runs = new java.util.ArrayList <int[]> ();
+	for (int l = 0; l < lev.levels; l++) {
+	    java.util.TreeMap <Long,java.util.ArrayList <Integer>> byKind
+		= new java.util.TreeMap <Long,java.util.ArrayList <Integer>> ();
+	    for (int j = lev.levelStart[l]; j < lev.levelStart[l + 1]; j++) {
+		int g = lev.order[j];
+		if (net.isInput( g )) continue;
+		long key = ((long)net.kind[g] << 32) | net.arity( g );
+		java.util.ArrayList <Integer> run = byKind.get( key );
+		if (run == null) {
+		    run = new java.util.ArrayList <Integer> ();
+		    byKind.put( key, run );
+		}
+		run.add( g );
+	    }
+	    for (java.util.ArrayList <Integer> run: byKind.values()) {
+		int[] gates = new int[run.size()];
+		for (int k = 0; k < gates.length; k++) gates[k] = run.get( k );
+		runs.add( gates );
+	    }
+	}
+	return runs;
+    }
+
+    /** load the SIMD kernel, which is not always faster, so it is
+     *  only used when asked for; VectorKernel needs the incubating
+     *  Vector API, which must be added to the run time
+     *  @return the kernel, or the plain Java kernel if it can't be loaded
+     *  @see VectorKernel
+     */
+    private static WordKernel kernel() {
+	try {
+	    return (WordKernel)Class.forName( "VectorKernel" )
+		.getDeclaredConstructor().newInstance();
+	} catch (Exception | LinkageError e) {
+	    Errors.warn( "Can't load the SIMD kernel, using plain Java: " + e );
+	    return new ScalarKernel();
+	}
+    }
+
+    /** @return the number of patterns evaluated in each pass */
+    public int patterns() {
+	return 64 * lanes;
+    }
+
+    /** set one lane of an input
+     *  @param i the input number, an index into Levelized.inputs
+     *  @param lane the lane
+     *  @param word the values of the input for the 64 patterns of the lane
+     */
+    public void setInput( int i, int lane, long word ) {
+	v[lev.inputs[i] * lanes + lane] = word;
+    }
+
+    /** get one lane of a gate's value
+     *  @param g the gate
+     *  @param lane the lane
+     *  @return the values of the gate for the 64 patterns of the lane
+     */
+    public long get( int g, int lane ) {
+	return v[g * lanes + lane];
+    }
+
+    /** evaluate all the gates, run by run, for all patterns
+     */
+    public void evaluate() {
+	for (int r = 0; r < runOp.length; r++) {
+	    if (runOp[r] == TABLE) {
+		tables( r );
+	    } else {
+		kernel.run(
+		    v, lanes, runOp[r], runDst[r].length, runArity[r],
+		    runDst[r], runSrc[r], runMask[r], runOutMask[r]
+		);
+	    }
+	}
+    }
+
+    /** evaluate a run of lut gates; each truth table is expanded into
+     *  one word per entry, and the words are reduced by a tree of
+     *  multiplexers, selecting on the last input first
+     *  @param r the run
+     */
+    private void tables( int r ) {
+	final int count = runDst[r].length;
+	final int arity = runArity[r];
+	final int[] src = runSrc[r];
+	final long[] mask = runMask[r];
+	long[] t = new long[1 << arity];
+	for (int k = 0; k < count; k++) {
+	    long table = runTable[r][k];
+	    for (int w = 0; w < lanes; w++) {
+		for (int i = 0; i < t.length; i++) t[i] = -((table >>> i) & 1);
+		for (int s = arity - 1; s >= 0; s--) {
+		    long x = v[src[s * count + k] + w] ^ mask[s * count + k];
+		    int half = 1 << s;
+		    for (int i = 0; i < half; i++) {
+			t[i] = (x & t[i + half]) | (~x & t[i]);
+		    }
+		}
+		v[runDst[r][k] + w] = t[0];
+	    }
+	}
+    }
+
+    /** simulate the vectors, a pass at a time, and print the settled
+     *  outputs for each vector in the same form as CycleSimulator
+     *  @param vectors the input vectors
+     *  @see CycleSimulator
+     */
+    public void run( Iterable <boolean[]> vectors ) {
+	CycleSimulator.printHeader( net );
+	final int inputs = lev.inputs.length;
+	final int outputs = lev.outputs.length;
+	boolean[][] batch = new boolean[patterns()][];
+	boolean[] out = new boolean[outputs];
+	long cycle = 0;
+
+	java.util.Iterator <boolean[]> it = vectors.iterator();
+	while (it.hasNext()) {
+	    // gather a pass worth of vectors
+	    int n = 0;
+	    while ((n < batch.length) && it.hasNext()) batch[n++] = it.next();
+
+	    // transpose them into input words
+	    for (int i = 0; i < inputs; i++) {
+		for (int lane = 0; lane < lanes; lane++) {
+		    long word = 0;
+		    for (int b = 0; b < 64; b++) {
+			int p = lane * 64 + b;
+			if ((p < n) && batch[p][i]) word |= 1L << b;
+		    }
+		    setInput( i, lane, word );
+		}
+	    }
+
+	    evaluate();
+
+	    for (int p = 0; p < n; p++) {
+		for (int o = 0; o < outputs; o++) {
+		    long word = get( lev.outputs[o], p >> 6 );
+		    out[o] = ((word >>> (p & 63)) & 1) != 0;
+		}
+		CycleSimulator.printCycle(
+		    cycle, Vectors.toString( batch[p] ), Vectors.toString( out )
+		);
+		cycle = cycle + 1;
+	    }
+	}
+    }
+}
@@ -0,0 +1,394 @@
+/* CircuitCompiler.java
+ * Generates a specialized evaluator class for each circuit
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/** Translates a netlist into straight-line Java code, one assignment
+ *  per gate in topological order, compiles it in memory and loads it
+ *  as hidden classes.  Each generated class only ever sees one circuit,
+ *  so none of the calls in it go through virtual gate methods.
+ *
+ *  Every gate number above 32767 the code mentions is a constant in its
+ *  class's constant pool, which holds at most 65535, and every method
+ *  holds at most 64K of code, so large circuits are split into parts,
+ *  each a class of its own, and each part into methods, by the number
+ *  of gate numbers mentioned.  Compiled circuits are cached by the
+ *  structure hash of the netlist, and a cached circuit is used only if
+ *  its netlist's structure is really the same.  The cache keeps only
+ *  the circuits used most recently, so it does not grow without bound
+ *  when many circuits are compiled in one run.
+ *  @see CompiledCircuit
+ *  @see Netlist
+ */
+public class CircuitCompiler {
+    // exception thrown when a circuit cannot be compiled
+    public static class Failure extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	Failure( String message ) {
+	    super( message );
+	}
+    }
+
+    // gate numbers mentioned per method, at under 16 bytes of code each
+    private static final int TERMS_PER_METHOD = 3000;
+
+    // gate numbers mentioned per class, each at most one constant
+    private static final int TERMS_PER_CLASS = 20000;
+
+    // the most compiler messages to report when compilation fails
+    private static final int MESSAGES = 5;
+
+    // the most compiled circuits to keep in the cache
+    private static final int CACHED = 16;
+
+    /** A compiled circuit and the structure it was compiled for
+     */
+    private static final class Entry {
+	final CompiledCircuit circuit;
+	final byte[] kind;
+	final long[] table;
+	final int[] faninStart;
+	final int[] fanin;
+
+	Entry( CompiledCircuit circuit, Netlist net ) {
+	    this.circuit = circuit;
+	    kind = net.kind;
+	    table = net.table;
+	    faninStart = net.faninStart;
+	    fanin = net.fanin;
+	}
+
+	/** @param net a netlist
+	 *  @return true if net has the structure this was compiled for
+	 */
+	boolean matches( Netlist net ) {
+	    return Arrays.equals( kind, net.kind )
+		&& Arrays.equals( table, net.table )
+		&& Arrays.equals( faninStart, net.faninStart )
+		&& Arrays.equals( fanin, net.fanin );
+	}
+    }
+
+    /** The cache of compiled circuits, by structure hash, in order of
+     *  use, dropping the least recently used beyond CACHED
+     */
+    private static final class Cache extends LinkedHashMap <Long,Entry> {
+	private static final long serialVersionUID = 1L;
+
+	Cache() {
+	    super( 2 * CACHED, 0.75f, true );
+	}
+
+	protected boolean removeEldestEntry( Map.Entry <Long,Entry> eldest ) {
+	    return size() > CACHED;
+	}
+    }
+
+    // compiled circuits; only used while holding its lock, but not
+    // while compiling
+    private static final Cache cache = new Cache();
+
+    /** get an evaluator for a netlist, compiling it if no circuit with
+     *  the same structure has been compiled before
+     *  @param net the netlist
+     *  @return the evaluator
+     *  @throws Failure if the netlist has feedback loops or can't be compiled
+     */
+    public static CompiledCircuit compile( Netlist net ) throws Failure {
+	long hash = net.structureHash();
+	Entry e;
+	synchronized (cache) {
+	    e = cache.get( hash );
+	}
+	if ((e == null) || !e.matches( net )) {
+	    // on a hash collision, the newer circuit takes the place
+	    e = new Entry( generate( net, hash ), net );
+	    synchronized (cache) {
+		cache.put( hash, e );
+	    }
+	}
+	return e.circuit;
+    }
+
+    /** generate, compile and load the evaluator for a netlist
+     *  @param net the netlist
+     *  @param hash the structure hash of net
+     *  @return the evaluator
+     *  @throws Failure if the netlist has feedback loops or can't be compiled
+     */
+    private static CompiledCircuit generate( Netlist net, long hash )
+	throws Failure
+    {
+	int[] order = net.topologicalOrder();
+	if (order == null) {
+	    throw new Failure( "circuit has feedback loops" );
+	}
+
+	// split the gates into parts, order[bounds[p]..bounds[p+1]-1]
+	List <Integer> bounds = new ArrayList <Integer> ();
+	bounds.add( 0 );
+	int terms = 0;
+	for (int j = 0; j < order.length; j++) {
+	    int t = terms( net, order[j] );
+	    if ((terms > 0) && (terms + t > TERMS_PER_CLASS)) {
+		bounds.add( j );
+		terms = 0;
+	    }
+	    terms = terms + t;
+	}
+	bounds.add( order.length );
+
+	int parts = bounds.size() - 1;
+	String[] names = new String[parts];
+	String[] sources = new String[parts];
+	for (int p = 0; p < parts; p++) {
+	    names[p] = "Circuit_" + Long.toHexString( hash ) + "_" + p;
+	    sources[p] = source(
+		net, order, bounds.get( p ), bounds.get( p + 1 ), names[p]
+	    );
+	}
+	byte[][] bytes = javac( names, sources );
+
+	final CompiledCircuit[] loaded = new CompiledCircuit[parts];
+	try {
+	    for (int p = 0; p < parts; p++) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup()
+		    .defineHiddenClass( bytes[p], true );
+		loaded[p] = (CompiledCircuit)lookup.findConstructor(
+		    lookup.lookupClass(), MethodType.methodType( void.class )
+		).invoke();
+	    }
+	} catch (Throwable e) {
+	    throw new Failure( "can't load compiled circuit: " + e );
+	}
+	if (parts == 1) return loaded[0];
+	return new CompiledCircuit() {
+	    public void eval( boolean[] v ) {
+		for (CompiledCircuit c: loaded) c.eval( v );
+	    }
+	};
+    }
+
+    /** @param net a netlist
+     *  @param g a gate
+     *  @return the number of gate numbers its assignment mentions
+     */
+    private static int terms( Netlist net, int g ) {
+	return 1 + net.arity( g );
+    }
+
+    /** generate the source text of the evaluator of part of a circuit
+     *  @param net the netlist
+     *  @param order the gates of net in topological order
+     *  @param first the first gate of the part, an index into order
+     *  @param last the index into order after the last gate of the part
+     *  @param className the name of the generated class
+     *  @return the source text
+     */
+    static String source(
+	Netlist net, int[] order, int first, int last, String className
+    ) {
+	StringBuilder s = new StringBuilder();
+	s.append( "public final class " ).append( className )
+	 .append( " implements CompiledCircuit {\n" );
+
+	int methods = 0;
+	int j = first;
+	while (j < last) {
+	    s.append( "  private static void e" ).append( methods )
+	     .append( "(boolean[] v) {\n" );
+	    int terms = 0;
+	    do {
+		expression( s, net, order[j] );
+		terms = terms + terms( net, order[j] );
+		j = j + 1;
+	    } while ((j < last)
+		&& (terms + terms( net, order[j] ) <= TERMS_PER_METHOD)
+	    );
+	    s.append( "  }\n" );
+	    methods = methods + 1;
+	}
+
+	s.append( "  public void eval(boolean[] v) {\n" );
+	for (int i = 0; i < methods; i++) {
+	    s.append( "    e" ).append( i ).append( "(v);\n" );
+	}
+	s.append( "  }\n}\n" );
+	return s.toString();
+    }
+
+    /** append the assignment that computes one gate
+     *  @param s where to append
+     *  @param net the netlist
+     *  @param g the gate
+     */
+    private static void expression( StringBuilder s, Netlist net, int g ) {
+	final String op;
+	switch (net.kind[g]) {
+	case Netlist.AND:  op = " & "; break;
+	case Netlist.OR:   op = " | "; break;
+	case Netlist.NOT:  op = null;  break;
+	case Netlist.NAND: op = " & "; break;
+	case Netlist.NOR:  op = " | "; break;
+	case Netlist.XOR:  op = " ^ "; break;
+	case Netlist.XNOR: op = " ^ "; break;
+	case Netlist.BUF:  op = " & "; break;
+	case Netlist.LUT: table( s, net, g ); return;
+	default: return; // input gates are set by the caller
+	}
+	boolean inverted = (net.kind[g] == Netlist.NAND)
+	    || (net.kind[g] == Netlist.NOR) || (net.kind[g] == Netlist.XNOR);
+
+	s.append( "    v[" ).append( g ).append( "] = " );
+	if (op == null) s.append( '!' );
+	if (inverted) s.append( "!(" );
+	for (int i = net.faninStart[g]; i < net.faninStart[g + 1]; i++) {
+	    if (i > net.faninStart[g]) s.append( op );
+	    literal( s, net.fanin[i] );
+	}
+	if (inverted) s.append( ')' );
+	s.append( ";\n" );
+    }
+
+    /** append the assignment that computes one lut gate
+     *  @param s where to append
+     *  @param net the netlist
+     *  @param g the gate
+     */
+    private static void table( StringBuilder s, Netlist net, int g ) {
+	s.append( "    v[" ).append( g ).append( "] = ((0x" )
+	 .append( Long.toHexString( net.table[g] ) ).append( "L >>> (" );
+	for (int i = net.faninStart[g]; i < net.faninStart[g + 1]; i++) {
+	    if (i > net.faninStart[g]) s.append( " | " );
+	    s.append( '(' );
+	    literal( s, net.fanin[i] );
+	    s.append( " ? " ).append( 1 << (i - net.faninStart[g] ) )
+	     .append( " : 0)" );
+	}
+	s.append( ")) & 1L) != 0;\n" );
+    }
+
+    /** append the expression for a literal
+     *  @param s where to append
+     *  @param lit the literal
+     */
+    private static void literal( StringBuilder s, int lit ) {
+	if (lit == Netlist.NONE) {
+	    s.append( "false" );
+	} else {
+	    if ((lit & 1) != 0) s.append( '!' );
+	    s.append( "v[" ).append( lit >> 1 ).append( ']' );
+	}
+    }
+
+    /** compile classes in memory
+     *  @param classNames the names of the classes
+     *  @param sources the source texts of the classes
+     *  @return the class files, in the order of the names
+     *  @throws Failure if the compiler is missing or reports errors,
+     *  with the first few of its messages
+     */
+    private static byte[][] javac( String[] classNames, String[] sources )
+	throws Failure
+    {
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	if (compiler == null) {
+	    throw new Failure( "no Java compiler, run with a JDK" );
+	}
+
+	List <JavaFileObject> in = new ArrayList <JavaFileObject> ();
+	for (int i = 0; i < classNames.length; i++) {
+	    final String source = sources[i];
+	    in.add( new SimpleJavaFileObject(
+		URI.create( "string:///" + classNames[i] + ".java" ),
+		JavaFileObject.Kind.SOURCE
+	    ) {
+		public CharSequence getCharContent( boolean ignoreErrors ) {
+		    return source;
+		}
+	    } );
+	}
+	final Map <String,ByteArrayOutputStream> classFiles
+	    = new HashMap <String,ByteArrayOutputStream> ();
+	JavaFileManager files = new ForwardingJavaFileManager <JavaFileManager> (
+	    compiler.getStandardFileManager( null, null, null )
+	) {
+	    public JavaFileObject getJavaFileForOutput(
+		JavaFileManager.Location location, String name,
+		JavaFileObject.Kind kind, FileObject sibling
+	    ) {
+		final ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+		classFiles.put( name, classFile );
+		return new SimpleJavaFileObject(
+		    URI.create( "mem:///" + name + ".class" ), kind
+		) {
+		    public OutputStream openOutputStream() {
+			return classFile;
+		    }
+		};
+	    }
+	};
+
+	DiagnosticCollector <JavaFileObject> messages
+	    = new DiagnosticCollector <JavaFileObject> ();
+	boolean ok = compiler.getTask(
+	    null, files, messages,
+	    Arrays.asList(
+		"-classpath", System.getProperty( "java.class.path" ),
+		"-g:none"
+	    ),
+	    null, in
+	).call();
+	if (!ok) {
+	    StringBuilder m = new StringBuilder( "generated code did not compile" );
+	    int n = 0;
+	    for (Diagnostic <? extends JavaFileObject> d: messages.getDiagnostics()) {
+		if (d.getKind() != Diagnostic.Kind.ERROR) continue;
+		if (n++ == MESSAGES) {
+		    m.append( "; ..." );
+		    break;
+		}
+		m.append( "; " );
+		if (d.getSource() != null) {
+		    m.append( d.getSource().getName() ).append( ':' )
+		     .append( d.getLineNumber() ).append( ": " );
+		}
+		m.append( d.getMessage( null ) );
+	    }
+	    throw new Failure( m.toString() );
+	}
+
+	byte[][] bytes = new byte[classNames.length][];
+	for (int i = 0; i < classNames.length; i++) {
+	    ByteArrayOutputStream classFile = classFiles.get( classNames[i] );
+	    if (classFile == null) {
+		throw new Failure( "no class file for " + classNames[i] );
+	    }
+	    bytes[i] = classFile.toByteArray();
+	}
+	return bytes;
+    }
+}
@@ -0,0 +1,159 @@
+/* ClockGate.java
+ * Gates whose output is a periodic clock
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Handles the properties specific to clock gates, whose output rises
+ *  once every period and falls after the fraction of the period given
+ *  by the duty cycle.  The first rise is at the gate's delay plus the
+ *  fraction of a period given by the phase.  A clock gate has no inputs;
+ *  one event is scheduled again and again for all of its edges, and the
+ *  time of each edge is computed from its number, so a clock doesn't
+ *  drift, however many cycles it runs.  In four-state simulation the
+ *  clock is unknown until its first rise.
+ *  @see LogicGate
+ *  @see ConstGate
+ */
+final class ClockGate extends LogicGate {
+    private final float period;	// time between rising edges
+    private final float duty;	// fraction of the period spent high
+    private final float phase;	// fraction of a period before the first
+
+    // the number of the next edge, rising edges are even
+    private long edge = 0;
+
+    // the one event used for every edge
+    private final Simulator.Event tick;
+
+    /** The constructor used only from within class Gate
+     *  @param name used to initialize the final field
+     *  @param delay used to initialize the final field
+     *  @param period the time between rising edges
+     *  @param duty the fraction of the period spent high
+     *  @param phase the fraction of a period before the first rise
+     */
+    public ClockGate(
+	String name, float delay, float period, float duty, float phase
+    ) {
+	super( name, delay );
+	this.period = period;
+	this.duty = duty;
+	this.phase = phase;
+	tick = new Simulator.Event( edgeTime( delay, period, duty, phase, 0 ) ){
+	    void trigger(){
+		edgeEvent( time );
+	    }
+	};
+    }
+
+    /** compute when an edge of a clock happens, the same for Netlist
+     *  @param delay the delay of the clock gate
+     *  @param period the time between rising edges
+     *  @param duty the fraction of the period spent high
+     *  @param phase the fraction of a period before the first rise
+     *  @param n the number of the edge, rising edges are even
+     *  @return the time of the edge
+     */
+    static float edgeTime(
+	float delay, float period, float duty, float phase, long n
+    ) {
+	double cycles = (double)phase + (n >> 1) + (((n & 1) != 0) ? duty : 0.0);
+	return (float)(delay + (cycles * period));
+    }
+
+    /** tell the gate that one of its input pins is in use
+     *  @param w the wire that is connected
+     *  @param pinName the name of the pin
+     *  @return corresponding pin number
+     */
+    public int registerInput( Wire w, String pinName ) {
+	Errors.warn( "Illegal input pin: " + name + " " + pinName );
+	return -1;
+    }
+
+    /** get the name of the input pin, given its number
+     * @param pinNumber the pin number
+     * @return pinName the pin name, never anything because
+     * clock gates have no input pins
+     */
+    public String inPinName( int pinNumber ) {
+	return "???";
+    }
+
+    /** check the sanity of this gate's connections, since a clock
+     *  gate has no inputs there is nothing to check, however a call
+     *  to this will also start the clock
+     */
+    public void checkSanity() {
+	// no sanity check; there are no input pins to check
+
+	// this is a good time to launch the simulation
+	Simulator.schedule( tick );
+    }
+
+    /** reconstruct the textual description of this gate
+     *  @return the textual description
+     */
+    public String toString() {
+	return "gate " + name + " clock " + delay + " " + period + " "
+	    + duty + " " + phase;
+    }
+
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "clock";
+    }
+
+    /** get the number of input pins of a clock gate
+     *  @return always 0
+     */
+    public int inputCount() {
+	return 0;
+    }
+
+    /** @return the time between rising edges */
+    float period() {
+	return period;
+    }
+
+    /** @return the fraction of the period spent high */
+    float duty() {
+	return duty;
+    }
+
+    /** @return the fraction of a period before the first rise */
+    float phase() {
+	return phase;
+    }
+
+    // Simulation methods
+
+    /** simulate the change of one of this gate's inputs,
+     *  a call to this will cause a fatal
+     *  error because clock gates have no inputs
+     *  @param time the time when the input changes
+     *  @param dstPin the pin that changes
+     *  @param v the new logic value
+     */
+    public void inputChangeEvent( float time, int dstPin, int v ) {
+	Errors.fatal( "Input should never change: " + toString() );
+    }
+
+    /** simulate one edge of the clock, then schedule the same event
+     *  again for the next edge
+     *  @param time the time of the edge
+     *  @see outputChangeEvent
+     */
+    private void edgeEvent( float time ) {
+	value = of( (edge & 1) == 0 );
+	outputChangeEvent( time );
+	edge = edge + 1;
+	Simulator.reschedule(
+	    tick, edgeTime( delay, period, duty, phase, edge )
+	);
+    }
+
+} // class ClockGate
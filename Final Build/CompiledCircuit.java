@@ -0,0 +1,19 @@
+/* CompiledCircuit.java
+ * Interface to circuit evaluators generated by CircuitCompiler
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** A compiled circuit evaluates all the gates of one particular
+ *  netlist, in topological order, with no delays.
+ *  @see CircuitCompiler
+ *  @see Netlist
+ */
+public interface CompiledCircuit {
+
+    /** compute the settled value of every gate
+     *  @param v the gate values, indexed by gate number; the values of
+     *  the input gates must be set by the caller, the rest are computed
+     */
+    public void eval( boolean[] v );
+}
@@ -0,0 +1,302 @@
+/* ConservativeSimulator.java
+ * Conservative parallel discrete-event simulation of a netlist
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Runs one logical process per partition of the circuit, each on its
+ *  own thread, using the Chandy-Misra-Bryant null message protocol.
+ *  An event may only be simulated once no other partition can still
+ *  send an earlier one.  Each partition promises its neighbours that
+ *  it will send nothing earlier than the lesser of its next event time
+ *  and its own input horizon, plus its lookahead, the least delay of
+ *  the wires leaving it; promises travel as null messages, in order
+ *  with the real events.  A partition waits for messages when it can
+ *  do nothing else, and all stop once no real events remain.
+ *
+ *  No partition will simulate anything before the least of their next
+ *  event times and horizons, so every transition before that time is
+ *  final; as it advances, the main thread prints those transitions in
+ *  time order, and they are the same as sequential simulation with the
+ *  same seed.
+ *  @see LogicalProcess
+ */
+public class ConservativeSimulator {
+    // exception thrown when the circuit can't be simulated in parallel
+    public static class Failure extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	Failure( String message ) {
+	    super( message );
+	}
+    }
+
+    private final Netlist net;
+    private final int[] part;
+    private final Partition[] partitions;
+
+    // real events queued or in transit anywhere, zero when all done
+    private final AtomicLong active = new AtomicLong();
+
+    // released when some partition's done time advances
+    private final Semaphore progress = new Semaphore( 0 );
+
+    // the first exception that ended a partition's thread, if any
+    private final AtomicReference <Throwable> failure
+	= new AtomicReference <Throwable> ();
+
+    /** A message between partitions, either a real event or, when
+     *  event is null, a promise that nothing earlier than time follows
+     */
+    private static final class Message {
+	final int from;
+	final float time;
+	final NetEvent event;
+
+	Message( int from, float time, NetEvent event ) {
+	    this.from = from;
+	    this.time = time;
+	    this.event = event;
+	}
+    }
+
+    // the message telling a partition to stop
+    private static final Message STOP
+	= new Message( -1, Float.POSITIVE_INFINITY, null );
+
+    /** Construct a parallel simulation
+     *  @param net the circuit
+     *  @param part the partition of each gate, numbered from 0
+     *  @param seed the seed for random delays
+     *  @param endTime the time when simulation stops
+     *  @throws Failure if a wire with no delay crosses partitions
+     */
+    public ConservativeSimulator(
+	Netlist net, int[] part, long seed, float endTime
+    ) throws Failure {
+	this.net = net;
+	this.part = part;
+	int parts = 0;
+	for (int p: part) parts = Math.max( parts, p + 1 );
+
+	GateState state = new GateState( net, seed );
+	partitions = new Partition[parts];
+	for (int p = 0; p < parts; p++) {
+	    partitions[p] = new Partition( net, state, p, part, endTime );
+	}
+
+	// find the neighbours and the lookahead of each partition
+	for (int w = 0; w < net.wireCount; w++) {
+	    int src = part[net.wireSrc[w]];
+	    int dst = part[net.wireDst[w]];
+	    if ((src == dst) || (net.wireDstSlot[w] < 0)) continue;
+	    if (net.wireDelay[w] <= 0.0f) throw new Failure(
+		"wire with no delay crosses partitions: " + wireText( w )
+	    );
+	    Partition s = partitions[src];
+	    s.lookahead = Math.min( s.lookahead, net.wireDelay[w] );
+	    if (!s.successors.contains( dst )) {
+		s.successors.add( dst );
+		partitions[dst].predecessors.add( src );
+	    }
+	}
+	for (Partition p: partitions) p.horizons();
+    }
+
+    /** @param w a wire
+     *  @return its textual description
+     */
+    private String wireText( int w ) {
+	return "wire " + net.name[net.wireSrc[w]] + " "
+	    + net.name[net.wireDst[w]] + " " + net.wireDelay[w];
+    }
+
+    /** simulate, one thread per partition, printing the transitions
+     *  as they become final; if a partition's thread fails, all stop,
+     *  and its exception is thrown here
+     */
+    public void run() {
+	for (Partition p: partitions) p.initialize();
+	if (active.get() == 0) return;
+	Thread[] threads = new Thread[partitions.length];
+	for (int p = 0; p < partitions.length; p++) {
+	    threads[p] = new Thread( partitions[p]::loop, "partition " + p );
+	    threads[p].start();
+	}
+	try {
+	    float floor = 0.0f;
+	    while (floor != Float.POSITIVE_INFINITY) {
+		progress.acquire();
+		progress.drainPermits();
+		if (failure.get() != null) break;
+		floor = Float.POSITIVE_INFINITY;
+		for (Partition p: partitions) floor = Math.min( floor, p.done );
+		print( floor );
+	    }
+	    for (Thread t: threads) t.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	Throwable f = failure.get();
+	if (f instanceof Error) throw (Error)f;
+	if (f != null) throw (RuntimeException)f;
+    }
+
+    /** print the transitions before a time in time order; each
+     *  partition's are already in order, and all before the time are
+     *  already there
+     *  @param floor the time
+     */
+    private void print( float floor ) {
+	List <NetEvent> batch = new ArrayList <NetEvent> ();
+	for (Partition p: partitions) {
+	    while (!p.transitions.isEmpty()
+		&& (p.transitions.peek().time < floor)
+	    ) {
+		batch.add( p.transitions.poll() );
+	    }
+	}
+	Collections.sort( batch );
+	for (NetEvent e: batch) {
+	    System.out.println( partitions[0].describe( e.time, e.gate, e.value ) );
+	}
+    }
+
+    /** The logical process of one partition, with its thread's loop
+     */
+    private final class Partition extends LogicalProcess {
+	final List <Integer> successors = new ArrayList <Integer> ();
+	final List <Integer> predecessors = new ArrayList <Integer> ();
+	float lookahead = Float.POSITIVE_INFINITY;
+
+	final LinkedBlockingQueue <Message> inbox
+	    = new LinkedBlockingQueue <Message> ();
+
+	// the latest promise of each predecessor, by partition number
+	float[] promise;
+
+	// the promise most recently made to the successors
+	float promised = 0.0f;
+
+	// output change events of this partition's gates that changed
+	// the output, holding the new value, until they are printed
+	final ConcurrentLinkedQueue <NetEvent> transitions
+	    = new ConcurrentLinkedQueue <NetEvent> ();
+
+	// the time before which this partition has simulated everything
+	// it ever will
+	volatile float done = 0.0f;
+
+	Partition(
+	    Netlist net, GateState state, int id, int[] part, float endTime
+	) {
+	    super( net, state, id, part, endTime );
+	}
+
+	/** set up the promises once the predecessors are known */
+	void horizons() {
+	    promise = new float[partitions.length];
+	    java.util.Arrays.fill( promise, Float.POSITIVE_INFINITY );
+	    for (int p: predecessors) promise[p] = 0.0f;
+	}
+
+	/** @return the time before which no more input can arrive */
+	float horizon() {
+	    float h = Float.POSITIVE_INFINITY;
+	    for (int p: predecessors) h = Math.min( h, promise[p] );
+	    return h;
+	}
+
+	/** the thread's main loop, which simulates what it can, then
+	 *  waits for messages; if it ends any other way than by STOP,
+	 *  it stops all the others
+	 */
+	void loop() {
+	    boolean stopped = false;
+	    try {
+		while (true) {
+		    float h = horizon();
+		    while (!queue.isEmpty() && (queue.peek().time < h)) {
+			process( queue.poll() );
+			if (active.decrementAndGet() == 0) {
+			    for (Partition p: partitions) p.inbox.add( STOP );
+			}
+		    }
+
+		    float next = queue.isEmpty()
+			? Float.POSITIVE_INFINITY : queue.peek().time;
+		    float p = Math.min( next, h ) + lookahead;
+		    if (p > promised) {
+			promised = p;
+			for (int s: successors) {
+			    partitions[s].inbox.add( new Message( id, p, null ) );
+			}
+		    }
+		    if (Math.min( next, h ) > done) {
+			done = Math.min( next, h );
+			progress.release();
+		    }
+
+		    Message m = inbox.take();
+		    while (m != null) {
+			if (m == STOP) {
+			    stopped = true;
+			    return;
+			}
+			receive( m );
+			m = inbox.poll();
+		    }
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    } catch (RuntimeException | Error e) {
+		failure.compareAndSet( null, e );
+	    } finally {
+		if (!stopped) {
+		    for (Partition p: partitions) p.inbox.add( STOP );
+		}
+		metrics.flush();
+		done = Float.POSITIVE_INFINITY;
+		progress.release();
+	    }
+	}
+
+	/** take in one message */
+	void receive( Message m ) {
+	    if (m.event != null) {
+		queue.add( m.event );	// already counted as active
+	    } else {
+		promise[m.from] = m.time;
+	    }
+	}
+
+	void schedule( NetEvent e ) {
+	    if (e.time <= endTime) {
+		active.incrementAndGet();
+		queue.add( e );
+	    }
+	}
+
+	void send( NetEvent e, int dst ) {
+	    if (e.time <= endTime) {
+		active.incrementAndGet();
+		partitions[dst].inbox.add( new Message( id, e.time, e ) );
+	    }
+	}
+
+	void transition( NetEvent e, boolean v ) {
+	    transitions.add(
+		new NetEvent( e.time, e.type, e.gate, 0, v, e.depth )
+	    );
+	}
+    }
+}
@@ -0,0 +1,54 @@
+/* CounterRNG.java
+ * Counter-based pseudo-random numbers, one stream per gate
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Counter-based random number generation.  Draw number n of stream id
+ *  under a seed is computed directly from those three numbers: the seed
+ *  and id are mixed into a key with the SplitMix64 finalizer, and the
+ *  draw is the finalizer applied to the key advanced n+1 times by the
+ *  golden ratio increment.  Mixing the id into the key, rather than
+ *  adding it, keeps the stream of one gate from being the stream of
+ *  another shifted by a few draws.  There is no state
+ *  to share or to synchronize, so a simulation that gives each gate its
+ *  own stream and counts its draws gets the same delays whatever order
+ *  the gates are simulated in, on any number of threads, and a rollback
+ *  only has to restore the counts.
+ *  @see PRNG
+ *  @see LogicalProcess
+ */
+public final class CounterRNG {
+    // the golden ratio increment of SplitMix64
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private CounterRNG() {}
+
+    /** @param seed the seed
+     *  @param id the stream, a gate number
+     *  @param n the number of draws from the stream before this one
+     *  @return 64 random bits
+     */
+    public static long bits( long seed, int id, long n ) {
+	long key = mix( seed ^ mix( GOLDEN * (id + 1) ) );
+	return mix( key + ((n + 1) * GOLDEN) );
+    }
+
+    /** @param z any number
+     *  @return z scrambled by the SplitMix64 finalizer
+     */
+    private static long mix( long z ) {
+	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+	return z ^ (z >>> 31);
+    }
+
+    /** @param seed the seed
+     *  @param id the stream, a gate number
+     *  @param n the number of draws from the stream before this one
+     *  @return x where 0 <= x < 1, with 24 random bits
+     */
+    public static float unit( long seed, int id, long n ) {
+	return (bits( seed, id, n ) >>> 40) * 0x1.0p-24f;
+    }
+}
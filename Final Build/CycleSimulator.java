@@ -0,0 +1,133 @@
+/* CycleSimulator.java
+ * Zero-delay cycle-based simulation of combinational circuits
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Cycle-based simulation ignores all delays; for each input vector
+ *  the levels of the circuit are evaluated in ascending order, after
+ *  which every gate holds its settled value.  No events are created,
+ *  so this is much faster than Simulator when timing doesn't matter.
+ *  @see Levelized
+ *  @see Vectors
+ */
+public class CycleSimulator {
+    private final Levelized lev;
+    private final Netlist net;
+
+    // the value of every gate, indexed by gate number
+    private final boolean[] v;
+
+    // the gates that are not inputs, in level order
+    private final int[] gates;
+
+    // when not null, evaluate the circuit with this instead of levels
+    private final CompiledCircuit compiled;
+
+    /** Construct a simulator for a levelized circuit
+     *  @param lev the levelized circuit
+     *  @param compiled an evaluator for the circuit, or null to
+     *  interpret the levels
+     *  @see CircuitCompiler
+     */
+    public CycleSimulator( Levelized lev, CompiledCircuit compiled ) {
+	this.lev = lev;
+	this.net = lev.net;
+	this.v = new boolean[net.gateCount];
+	this.compiled = compiled;
+
+	gates = new int[net.gateCount - lev.inputs.length];
+	int n = 0;
+	for (int g: lev.order) if (!net.isInput( g )) gates[n++] = g;
+    }
+
+    /** settle the circuit for one input vector
+     *  @param in the values of the input gates, in declaration order
+     *  @return the values of all gates, indexed by gate number;
+     *  this array is reused by the next call
+     */
+    public boolean[] settle( boolean[] in ) {
+	for (int i = 0; i < lev.inputs.length; i++) v[lev.inputs[i]] = in[i];
+	if (compiled != null) {
+	    compiled.eval( v );
+	} else {
+	    evaluate();
+	}
+	return v;
+    }
+
+    /** evaluate the gates level by level; all kinds of gates are
+     *  lowered to truth tables, so one loop evaluates every gate, except
+     *  those too wide for a table, which count their true inputs
+     *  @see Netlist.lower
+     *  @see Netlist.count
+     */
+    private void evaluate() {
+	final int[] gates = this.gates;
+	final int[] faninStart = net.faninStart;
+	final long[] table = net.table;
+	for (int j = 0; j < gates.length; j++) {
+	    int g = gates[j];
+	    int first = faninStart[g];
+	    int last = faninStart[g + 1];
+	    if (last - first > LutGate.MAX_INPUTS) {
+		int ones = 0;
+		for (int i = first; i < last; i++) {
+		    if (literal( net.fanin[i] )) ones++;
+		}
+		v[g] = Netlist.count( net.kind[g], ones, last - first );
+		continue;
+	    }
+	    int index = 0;
+	    for (int i = first; i < last; i++) {
+		if (literal( net.fanin[i] )) index |= 1 << (i - first);
+	    }
+	    v[g] = ((table[g] >>> index) & 1) != 0;
+	}
+    }
+
+    /** @param lit a literal
+     *  @return its current value
+     */
+    private boolean literal( int lit ) {
+	if (lit == Netlist.NONE) return false;
+	return v[lit >> 1] ^ ((lit & 1) != 0);
+    }
+
+    /** simulate each vector in turn and print the settled outputs
+     *  @param vectors the input vectors
+     */
+    public void run( Iterable <boolean[]> vectors ) {
+	printHeader( net );
+	boolean[] out = new boolean[lev.outputs.length];
+	long cycle = 0;
+	for (boolean[] in: vectors) {
+	    settle( in );
+	    for (int i = 0; i < out.length; i++) out[i] = v[lev.outputs[i]];
+	    printCycle( cycle, Vectors.toString( in ), Vectors.toString( out ) );
+	    cycle = cycle + 1;
+	}
+    }
+
+    /** print the names of the inputs and outputs of a circuit
+     *  @param net the circuit
+     */
+    static void printHeader( Netlist net ) {
+	StringBuilder s = new StringBuilder( "-- inputs" );
+	for (int g: net.inputs) s.append( ' ' ).append( net.name[g] );
+	s.append( " outputs" );
+	for (int g: net.outputs) s.append( ' ' ).append( net.name[g] );
+	System.out.println( s );
+    }
+
+    /** print the result of one cycle
+     *  @param cycle the cycle number
+     *  @param in the input vector, as text
+     *  @param out the settled output values, as text
+     */
+    static void printCycle( long cycle, String in, String out ) {
+	System.out.println(
+	    "At cycle " + cycle + " inputs " + in + " outputs " + out
+	);
+    }
+}
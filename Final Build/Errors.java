@@ -17,6 +17,13 @@ public class Errors {
 	return errorCount;
     }
 
+    /** Forget the errors counted, so another simulation can start, as
+     *  in Batch
+     */
+    static void reset() {
+	errorCount = 0;
+    }
+
     /** Report nonfatal errors, output a message and return
      * @arg message the message to output
      */
@@ -25,11 +32,13 @@ public class Errors {
 	errorCount = errorCount + 1;
     }
 
-    /** Report fatal errors, output a message and exit, never to return
+    /** Report fatal errors, output a message and exit, never to return;
+     *  in batch mode, only the one simulation ends
      * @arg message the message to output
      */
     public static void fatal( String message ) {
 	warn( message );
+	if (Batch.inJob()) throw new Batch.Abort( message );
 	System.exit( 1 );
     }
 }
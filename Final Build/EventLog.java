@@ -0,0 +1,181 @@
+/* EventLog.java
+ * Record and replay of the order of simulation events
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** A replay log holds everything about a run of Simulator that is not
+ *  fixed by the circuit: which event was triggered next, and each random
+ *  number the jitter model drew.  Simulator numbers events as they are
+ *  scheduled, and the log holds, in the order they happened, each
+ *  triggered event's number, as the difference from the number of the
+ *  event before it, and each random draw, as the 4 bytes of the float.
+ *  Differences are zigzag encoded and written in 7-bit groups, low
+ *  group first, with the high bit of each byte set if more follow; a
+ *  zero byte ends the log.  Most events are triggered soon after they
+ *  are scheduled, so most differences take a single byte.
+ *
+ *  Replaying the log with the same circuit takes the events and draws
+ *  from it instead of from the event set and the random number
+ *  generator, so it repeats the recorded run exactly, including the
+ *  order of events that happen at the same time.
+ *  @see Simulator
+ *  @see JitterModel
+ */
+public final class EventLog {
+    // the first bytes of a log file
+    private static final int MAGIC = 0x4c4f4731;	// "LOG1"
+
+    // at most one of these is open
+    private static OutputStream out = null;
+    private static InputStream in = null;
+
+    private static long last = 0;	// the number of the previous event
+
+    private EventLog() {}
+
+    /** @return true if a log is being recorded */
+    public static boolean recording() {
+	return out != null;
+    }
+
+    /** @return true if a log is being replayed */
+    public static boolean replaying() {
+	return in != null;
+    }
+
+    /** record the run in a log file
+     *  @param file the file name
+     */
+    public static void record( String file ) {
+	try {
+	    out = new BufferedOutputStream( new FileOutputStream( file ) );
+	    writeInt( MAGIC );
+	} catch (FileNotFoundException e) {
+	    Errors.fatal( "Can't create the log file" );
+	}
+    }
+
+    /** replay the run recorded in a log file
+     *  @param file the file name
+     */
+    public static void replay( String file ) {
+	try {
+	    in = new BufferedInputStream( new FileInputStream( file ) );
+	    if (readInt() != MAGIC) Errors.fatal( "Not a log file: " + file );
+	} catch (FileNotFoundException e) {
+	    Errors.fatal( "Can't open the log file" );
+	}
+    }
+
+    /** record that an event was triggered
+     *  @param seq its number
+     */
+    public static void writeEvent( long seq ) {
+	long d = seq - last;
+	last = seq;
+	writeVarint( ((d << 1) ^ (d >> 63)) + 1 );
+    }
+
+    /** @return the number of the next event to trigger, or -1 if the
+     *  recorded run ends here
+     */
+    public static long readEvent() {
+	long z = readVarint();
+	if (z == 0) return -1;
+	z = z - 1;
+	last = last + ((z >>> 1) ^ -(z & 1));
+	return last;
+    }
+
+    /** record a random draw
+     *  @param x the number drawn
+     */
+    public static void writeDraw( float x ) {
+	writeInt( Float.floatToRawIntBits( x ) );
+    }
+
+    /** @return the next random draw of the recorded run */
+    public static float readDraw() {
+	return Float.intBitsToFloat( readInt() );
+    }
+
+    /** end the log, writing the end mark if recording
+     */
+    public static void close() {
+	try {
+	    if (out != null) {
+		out.write( 0 );
+		out.close();
+	    }
+	    if (in != null) in.close();
+	} catch (IOException e) {
+	    Errors.fatal( "Can't write the log file" );
+	}
+	out = null;
+	in = null;
+	last = 0;
+    }
+
+    private static void writeVarint( long v ) {
+	try {
+	    while ((v & ~0x7fL) != 0) {
+		out.write( (int)(v & 0x7f) | 0x80 );
+		v = v >>> 7;
+	    }
+	    out.write( (int)v );
+	} catch (IOException e) {
+	    Errors.fatal( "Can't write the log file" );
+	}
+    }
+
+    private static long readVarint() {
+	long v = 0;
+	for (int shift = 0; shift < 64; shift = shift + 7) {
+	    int b = read();
+	    v = v | ((long)(b & 0x7f) << shift);
+	    if ((b & 0x80) == 0) return v;
+	}
+	Errors.fatal( "Log file is corrupt" );
+	return 0; // never reached, fatal never returns
+    }
+
+    private static void writeInt( int v ) {
+	try {
+	    for (int shift = 24; shift >= 0; shift = shift - 8) {
+		out.write( v >>> shift );
+	    }
+	} catch (IOException e) {
+	    Errors.fatal( "Can't write the log file" );
+	}
+    }
+
+    private static int readInt() {
+	int v = 0;
+	for (int i = 0; i < 4; i++) v = (v << 8) | read();
+	return v;
+    }
+
+    /** @return the next byte of the log
+     */
+    private static int read() {
+	try {
+	    int b = in.read();
+	    if (b < 0) throw new EOFException();
+	    return b;
+	} catch (IOException e) {
+	    Errors.fatal( "Log file ends too soon" );
+	    return 0; // never reached, fatal never returns
+	}
+    }
+}
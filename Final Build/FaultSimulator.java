@@ -0,0 +1,307 @@
+/* FaultSimulator.java
+ * Bit-parallel stuck-at fault simulation of combinational circuits
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Grades input vectors by how many single stuck-at faults they detect.
+ *  There is a stuck-at-0 and a stuck-at-1 fault on the output of every
+ *  gate and on every wire, where a wire fault affects only the one gate
+ *  input the wire drives.  A fault is detected by a vector when some
+ *  output of the circuit, a gate that drives no wire, differs from the
+ *  good circuit.
+ *
+ *  Vectors are taken 64 at a time, one per bit of a long word, as in
+ *  BitSimulator, which computes the good circuit.  Each fault still
+ *  undetected is then injected in turn, and only the gates its effect
+ *  reaches are reevaluated, in level order, starting from the fault
+ *  site; the faulty values of those gates are kept apart from the good
+ *  values of all the others.  Detected faults are dropped, and once all
+ *  faults are detected the remaining vectors are not simulated.
+ *  @see BitSimulator
+ *  @see Levelized
+ */
+public class FaultSimulator {
+    private final Levelized lev;
+    private final Netlist net;
+    private final BitSimulator good;
+
+    // the faults: the gate, the index into Netlist.fanin of the faulty
+    // input or -1 for the gate's output, and the stuck value
+    private final int faultCount;
+    private final int[] faultGate;
+    private final int[] faultPin;
+    private final boolean[] faultValue;
+
+    // the faults not yet detected
+    private final int[] active;
+    private int activeCount;
+
+    // the good values of the current pass, and the faulty values of
+    // the gates the current fault has changed, marked as touched
+    private final long[] goodValue;
+    private final long[] badValue;
+    private final boolean[] touched;
+    private final int[] touchedList;
+    private int touchedCount;
+
+    // gates waiting to be reevaluated, by level, each level's gates in
+    // pending[lev.levelStart[l]..lev.levelStart[l]+pendingCount[l]-1]
+    private final boolean[] scheduled;
+    private final int[] pending;
+    private final int[] pendingCount;
+    private int highest;		// the highest level with gates waiting
+
+    /** Construct a fault simulator, listing all the faults
+     *  @param lev the levelized circuit
+     */
+    public FaultSimulator( Levelized lev ) {
+	this.lev = lev;
+	this.net = lev.net;
+	this.good = new BitSimulator( lev, 1 );
+
+	int n = 2 * net.gateCount;
+	for (int w = 0; w < net.wireCount; w++) {
+	    if (net.wireDstSlot[w] >= 0) n = n + 2;
+	}
+	faultCount = n;
+	faultGate = new int[n];
+	faultPin = new int[n];
+	faultValue = new boolean[n];
+	n = 0;
+	for (int g = 0; g < net.gateCount; g++) {
+	    for (int v = 0; v < 2; v++) {
+		faultGate[n] = g;
+		faultPin[n] = -1;
+		faultValue[n++] = v == 1;
+	    }
+	}
+	for (int w = 0; w < net.wireCount; w++) {
+	    if (net.wireDstSlot[w] < 0) continue;
+	    int g = net.wireDst[w];
+	    for (int v = 0; v < 2; v++) {
+		faultGate[n] = g;
+		faultPin[n] = net.faninStart[g] + net.wireDstSlot[w];
+		faultValue[n++] = v == 1;
+	    }
+	}
+
+	active = new int[faultCount];
+	for (int f = 0; f < faultCount; f++) active[f] = f;
+	activeCount = faultCount;
+
+	goodValue = new long[net.gateCount];
+	badValue = new long[net.gateCount];
+	touched = new boolean[net.gateCount];
+	touchedList = new int[net.gateCount];
+	scheduled = new boolean[net.gateCount];
+	pending = new int[net.gateCount];
+	pendingCount = new int[lev.levels];
+    }
+
+    /** @return the number of faults */
+    public int faults() {
+	return faultCount;
+    }
+
+    /** @return the number of faults detected so far */
+    public int detected() {
+	return faultCount - activeCount;
+    }
+
+    /** simulate the vectors, 64 at a time, until they run out or every
+     *  fault is detected
+     *  @param vectors the input vectors
+     *  @return the number of vectors simulated
+     */
+    public long simulate( Iterable <boolean[]> vectors ) {
+	final int inputs = lev.inputs.length;
+	boolean[][] batch = new boolean[64][];
+	long first = 0;
+
+	java.util.Iterator <boolean[]> it = vectors.iterator();
+	while (it.hasNext() && (activeCount > 0)) {
+	    int n = 0;
+	    while ((n < batch.length) && it.hasNext()) batch[n++] = it.next();
+	    for (int i = 0; i < inputs; i++) {
+		long word = 0;
+		for (int p = 0; p < n; p++) if (batch[p][i]) word |= 1L << p;
+		good.setInput( i, 0, word );
+	    }
+	    good.evaluate();
+	    for (int g = 0; g < net.gateCount; g++) goodValue[g] = good.get( g, 0 );
+
+	    long valid = (n == 64) ? -1L : (1L << n) - 1;
+	    int kept = 0;
+	    for (int k = 0; k < activeCount; k++) {
+		int f = active[k];
+		if ((inject( f ) & valid) == 0) active[kept++] = f;
+	    }
+	    activeCount = kept;
+	    first = first + n;
+	}
+	return first;
+    }
+
+    /** simulate the effect of one fault on the current pass
+     *  @param f the fault
+     *  @return the patterns in which some output differs from good
+     */
+    private long inject( int f ) {
+	int g = faultGate[f];
+	long stuck = faultValue[f] ? -1L : 0L;
+	long v = (faultPin[f] < 0) ? stuck : evaluate( g, faultPin[f], stuck );
+	long diff = 0;
+	if (v != goodValue[g]) {
+	    highest = lev.level[g];
+	    change( g, v );
+	    for (int l = lev.level[g] + 1; l <= highest; l++) {
+		int base = lev.levelStart[l];
+		for (int i = 0; i < pendingCount[l]; i++) {
+		    int d = pending[base + i];
+		    scheduled[d] = false;
+		    long dv = evaluate( d, -1, 0L );
+		    if (dv != goodValue[d]) change( d, dv );
+		}
+		pendingCount[l] = 0;
+	    }
+	    for (int i = 0; i < touchedCount; i++) {
+		int t = touchedList[i];
+		if (net.isOutput( t )) diff |= badValue[t] ^ goodValue[t];
+		touched[t] = false;
+	    }
+	    touchedCount = 0;
+	}
+	return diff;
+    }
+
+    /** record a faulty value and schedule the gates it feeds
+     *  @param g the gate
+     *  @param v its faulty value
+     */
+    private void change( int g, long v ) {
+	badValue[g] = v;
+	touched[g] = true;
+	touchedList[touchedCount++] = g;
+	for (int i = net.fanoutStart[g]; i < net.fanoutStart[g + 1]; i++) {
+	    int w = net.fanout[i];
+	    if (net.wireDstSlot[w] < 0) continue;
+	    int d = net.wireDst[w];
+	    if (scheduled[d]) continue;
+	    scheduled[d] = true;
+	    int l = lev.level[d];
+	    pending[lev.levelStart[l] + pendingCount[l]++] = d;
+	    highest = Math.max( highest, l );
+	}
+    }
+
+    /** @param lit a literal
+     *  @return its value in the faulty circuit
+     */
+    private long value( int lit ) {
+	if (lit == Netlist.NONE) return 0L;
+	int s = lit >> 1;
+	long x = touched[s] ? badValue[s] : goodValue[s];
+	return ((lit & 1) == 0) ? x : ~x;
+    }
+
+    /** evaluate a gate in the faulty circuit
+     *  @param g the gate
+     *  @param pin the index into Netlist.fanin of an input stuck at a
+     *  value, or -1 if none
+     *  @param stuck the value of that input
+     *  @return the gate's value
+     */
+    private long evaluate( int g, int pin, long stuck ) {
+	int first = net.faninStart[g];
+	int last = net.faninStart[g + 1];
+	long v;
+	switch (net.kind[g]) {
+	case Netlist.AND:
+	case Netlist.BUF:
+	    v = -1L;
+	    for (int i = first; i < last; i++) {
+		v &= (i == pin) ? stuck : value( net.fanin[i] );
+	    }
+	    return v;
+	case Netlist.OR:
+	    v = 0L;
+	    for (int i = first; i < last; i++) {
+		v |= (i == pin) ? stuck : value( net.fanin[i] );
+	    }
+	    return v;
+	case Netlist.NAND:
+	    v = -1L;
+	    for (int i = first; i < last; i++) {
+		v &= (i == pin) ? stuck : value( net.fanin[i] );
+	    }
+	    return ~v;
+	case Netlist.NOR:
+	    v = 0L;
+	    for (int i = first; i < last; i++) {
+		v |= (i == pin) ? stuck : value( net.fanin[i] );
+	    }
+	    return ~v;
+	case Netlist.XOR:
+	case Netlist.XNOR:
+	    v = (net.kind[g] == Netlist.XNOR) ? -1L : 0L;
+	    for (int i = first; i < last; i++) {
+		v ^= (i == pin) ? stuck : value( net.fanin[i] );
+	    }
+	    return v;
+	case Netlist.NOT:
+	    return ~((first == pin) ? stuck : value( net.fanin[first] ));
+	case Netlist.CONST:
+	case Netlist.CLOCK:
+	    return goodValue[g];
+	default: // lut gates, by a tree of multiplexers as in BitSimulator
+	    long table = net.table[g];
+	    long[] t = new long[1 << (last - first)];
+	    for (int i = 0; i < t.length; i++) t[i] = -((table >>> i) & 1);
+	    for (int s = last - first - 1; s >= 0; s--) {
+		int i = first + s;
+		long x = (i == pin) ? stuck : value( net.fanin[i] );
+		int half = 1 << s;
+		for (int j = 0; j < half; j++) {
+		    t[j] = (x & t[j + half]) | (~x & t[j]);
+		}
+	    }
+	    return t[0];
+	}
+    }
+
+    /** @param f a fault
+     *  @return its description, the gate output or wire, and the value
+     */
+    private String describe( int f ) {
+	int g = faultGate[f];
+	String site;
+	if (faultPin[f] < 0) {
+	    site = net.name[g] + " out";
+	} else {
+	    int slot = faultPin[f] - net.faninStart[g];
+	    int lit = net.fanin[faultPin[f]];
+	    String src = (lit == Netlist.NONE) ? "?" : net.name[lit >> 1];
+	    int arity = net.faninStart[g + 1] - net.faninStart[g];
+	    site = "wire " + src + " " + net.name[g] + " "
+		+ ((arity == 1) ? "in" : "in" + (slot + 1));
+	}
+	return site + " stuck at " + (faultValue[f] ? 1 : 0);
+    }
+
+    /** simulate the vectors and print the coverage, followed by the
+     *  faults not detected
+     *  @param vectors the input vectors
+     */
+    public void run( Iterable <boolean[]> vectors ) {
+	long count = simulate( vectors );
+	System.out.println(
+	    "-- " + count + " vectors detect " + detected() + " of "
+	    + faults() + " faults, coverage "
+	    + String.format( "%.2f%%", 100.0 * detected() / Math.max( faults(), 1 ) )
+	);
+	for (int k = 0; k < activeCount; k++) {
+	    System.out.println( "undetected " + describe( active[k] ) );
+	}
+    }
+}
@@ -0,0 +1,118 @@
+/* FlightEvents.java
+ * Java Flight Recorder events of simulation runs
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Custom events for Java Flight Recorder, so recordings show what the
+ *  simulator was doing alongside GC and CPU samples.  Phase events mark
+ *  the phases of Logic.main; Batch events are written by each engine's
+ *  SimMetrics.Counter whenever it adds to the totals, every 4096
+ *  events, so they sample the progress of simulation.  When no
+ *  recording is running, or these events are disabled in its settings,
+ *  an event is only created, begun and dropped, and the counters make
+ *  one every 4096 events, so the cost is next to nothing.
+ *
+ *  To record: java -XX:StartFlightRecording=filename=run.jfr Logic file
+ *  then: jfr print --events Logic.Phase,Logic.Batch run.jfr
+ *  @see Logic
+ *  @see SimMetrics
+ */
+public final class FlightEvents {
+    private FlightEvents() {}
+
+    /** One phase of a run of Logic, its duration is the event's
+     */
+    @Name( "Logic.Phase" )
+    @Label( "Simulation Phase" )
+    @Category( "Logic" )
+    @Description( "A phase of Logic.main: parse, sanity check, simulate, flush" )
+    @StackTrace( false )
+    static final class Phase extends Event {
+	@Label( "Phase" )
+	String phase;
+
+	@Label( "Circuit" )
+	String file;
+    }
+
+    /** A batch of events simulated by one engine, or one thread of a
+     *  parallel engine, from one addition to the totals to the next
+     */
+    @Name( "Logic.Batch" )
+    @Label( "Simulation Batch" )
+    @Category( "Logic" )
+    @Description( "Events simulated by one engine since its last batch" )
+    @StackTrace( false )
+    static final class Batch extends Event {
+	@Label( "Events" )
+	long events;
+
+	@Label( "Suppressed Outputs" )
+	long suppressed;
+
+	// not startTime and endTime, which every event has already
+
+	@Label( "Simulated Start" )
+	@Description( "Simulated time at the start of the batch" )
+	float simStart;
+
+	@Label( "Simulated End" )
+	@Description( "Simulated time at the end of the batch" )
+	float simEnd;
+
+	@Label( "Queue Depth" )
+	int queued;
+    }
+
+    /** begin a phase
+     *  @param phase its name
+     *  @param file the circuit file
+     *  @return the event, to commit when the phase ends
+     */
+    static Phase phase( String phase, String file ) {
+	Phase e = new Phase();
+	e.phase = phase;
+	e.file = file;
+	e.begin();
+	return e;
+    }
+
+    /** begin a batch
+     *  @return the event, to end with batch
+     */
+    static Batch batch() {
+	Batch e = new Batch();
+	e.begin();
+	return e;
+    }
+
+    /** end a batch and write it if it is being recorded
+     *  @param e the batch begun by batch()
+     *  @param events the events simulated in it
+     *  @param suppressed the output changes that changed nothing
+     *  @param simStart the simulated time at its start
+     *  @param simEnd the simulated time at its end
+     *  @param queued the events then waiting
+     */
+    static void batch( Batch e, long events, long suppressed,
+	float simStart, float simEnd, int queued
+    ) {
+	e.end();
+	if (e.shouldCommit()) {
+	    e.events = events;
+	    e.suppressed = suppressed;
+	    e.simStart = simStart;
+	    e.simEnd = simEnd;
+	    e.queued = queued;
+	    e.commit();
+	}
+    }
+}
@@ -0,0 +1,263 @@
+/* Footprint.java
+ * Estimates of the memory used by circuit elements and pending events
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Estimates how many bytes the circuit and the pending events take,
+ *  from the layout of their objects, without a heap dump.  An object
+ *  takes a header, then its fields, rounded up to the object alignment;
+ *  the header and reference sizes depend on whether the JVM compresses
+ *  pointers, which is asked of the JVM.  Each gate or wire is charged
+ *  for itself and the objects only it refers to: its name, the lists of
+ *  its outgoing wires, and arrays; not for other gates and wires.  The
+ *  JVM may pack fields more tightly than assumed, so these are
+ *  estimates, usually within a few percent.
+ *
+ *  The queue is measured while Simulator runs, each time it grows by a
+ *  quarter past the last measurement, so measuring costs time in
+ *  proportion to the largest queue; the report gives the high-water
+ *  mark and the bytes per event measured nearest to it.
+ *  @see Logic
+ *  @see Simulator
+ */
+final class Footprint {
+    static boolean on = false;		// tested by Simulator.run
+
+    // the layout, asked of the JVM, and the usual 64-bit defaults
+    private static final int REF;	// bytes per reference
+    private static final int HEADER;	// bytes of object header
+    private static final int ALIGN;	// object alignment
+    static {
+	boolean oops = true;
+	boolean classes = true;
+	int align = 8;
+	try {
+	    com.sun.management.HotSpotDiagnosticMXBean vm
+		= ManagementFactory.getPlatformMXBean(
+		    com.sun.management.HotSpotDiagnosticMXBean.class
+		);
+	    oops = Boolean.parseBoolean(
+		vm.getVMOption( "UseCompressedOops" ).getValue()
+	    );
+	    classes = Boolean.parseBoolean(
+		vm.getVMOption( "UseCompressedClassPointers" ).getValue()
+	    );
+	    align = Integer.parseInt(
+		vm.getVMOption( "ObjectAlignmentInBytes" ).getValue()
+	    );
+	} catch (RuntimeException e) {
+	    // not HotSpot, keep the defaults
+	}
+	REF = oops ? 4 : 8;
+	HEADER = classes ? 12 : 16;
+	ALIGN = align;
+    }
+
+    // object sizes by class, computed once each
+    private static final Map <Class <?>, Long> shallow
+	= new HashMap <Class <?>, Long> ();
+
+    // the queue high-water mark, and the bytes per event there
+    private static long highWater = 0;
+    private static long measured = 0;	// queue size when last measured
+    private static double perEvent = 0.0;
+
+    private Footprint() {}
+
+    /** turn off and forget the queue measurements, so another
+     *  simulation can start, as in Batch
+     */
+    static void reset() {
+	on = false;
+	highWater = 0;
+	measured = 0;
+	perEvent = 0.0;
+    }
+
+    /** @param n a size in bytes
+     *  @return n rounded up to the object alignment
+     */
+    private static long align( long n ) {
+	return (n + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    /** @param c a type
+     *  @return the bytes of a field or array element of that type
+     */
+    private static int size( Class <?> c ) {
+	if (!c.isPrimitive()) return REF;
+	if ((c == long.class) || (c == double.class)) return 8;
+	if ((c == int.class) || (c == float.class)) return 4;
+	if ((c == short.class) || (c == char.class)) return 2;
+	return 1;
+    }
+
+    /** @param c a class
+     *  @return the bytes of an instance of c, not counting what it
+     *  refers to
+     */
+    static long shallow( Class <?> c ) {
+	Long s = shallow.get( c );
+	if (s == null) {
+	    long n = HEADER;
+	    for (Class <?> k = c; k != null; k = k.getSuperclass()) {
+		for (Field f: k.getDeclaredFields()) {
+		    if (!Modifier.isStatic( f.getModifiers() )) {
+			n = n + size( f.getType() );
+		    }
+		}
+	    }
+	    s = align( n );
+	    shallow.put( c, s );
+	}
+	return s;
+    }
+
+    /** @param s a string
+     *  @return its bytes, assuming compact strings
+     */
+    static long string( String s ) {
+	boolean latin = s.chars().allMatch( ch -> ch < 256 );
+	return shallow( String.class )
+	    + align( HEADER + 4 + (latin ? 1 : 2) * s.length() );
+    }
+
+    /** @param list a linked list
+     *  @return its bytes, not counting its elements
+     */
+    static long list( LinkedList <?> list ) {
+	return shallow( LinkedList.class )
+	    + list.size() * shallow( node( "java.util.LinkedList$Node" ) );
+    }
+
+    /** @param name the name of a class that may be hidden
+     *  @return the class, or Object if it can't be found
+     */
+    private static Class <?> node( String name ) {
+	try {
+	    return Class.forName( name );
+	} catch (ClassNotFoundException e) {
+	    return Object.class;
+	}
+    }
+
+    /** @param o an object
+     *  @return the bytes of o and the strings, lists and arrays its
+     *  fields refer to, but not of other gates, wires or events
+     */
+    static long retained( Object o ) {
+	long n = shallow( o.getClass() );
+	for (Class <?> k = o.getClass(); k != Object.class; k = k.getSuperclass()) {
+	    for (Field f: k.getDeclaredFields()) {
+		if (Modifier.isStatic( f.getModifiers() )) continue;
+		if (f.getType().isPrimitive()) continue;
+		Object v;
+		try {
+		    f.setAccessible( true );
+		    v = f.get( o );
+		} catch (RuntimeException | IllegalAccessException e) {
+		    continue;	// a class of the JDK, not ours
+		}
+		if (v instanceof String) {
+		    n = n + string( (String)v );
+		} else if (v instanceof LinkedList) {
+		    n = n + list( (LinkedList <?>)v );
+		} else if ((v != null) && v.getClass().isArray()) {
+		    n = n + align( HEADER + 4 + (long)Array.getLength( v )
+			* size( v.getClass().getComponentType() ) );
+		}
+	    }
+	}
+	return n;
+    }
+
+    /** print the bytes taken by the gates, by kind, and by the wires
+     *  @param gates all the gates, as in Logic.gates
+     *  @param wires all the wires, as in Logic.wires
+     *  @param names the map of gates by name
+     */
+    static void reportLoad(
+	List <Gate> gates, List <Wire> wires, Map <String,Gate> names
+    ) {
+	Map <String,long[]> kinds = new TreeMap <String,long[]> ();
+	long gateBytes = 0;
+	for (Gate g: gates) {
+	    long b = retained( g );
+	    long[] k = kinds.computeIfAbsent( g.kind(), x -> new long[2] );
+	    k[0]++;
+	    k[1] += b;
+	    gateBytes = gateBytes + b;
+	}
+	long wireBytes = 0;
+	for (Wire w: wires) wireBytes = wireBytes + retained( w );
+
+	// the lists of all gates and wires and the map of names
+	long capacity = 2L * Integer.highestOneBit(
+	    Math.max( 1, names.size() * 4 / 3 )
+	);
+	long setBytes = 2 * shallow( LinkedList.class )
+	    + (gates.size() + wires.size())
+	    * shallow( node( "java.util.LinkedList$Node" ) )
+	    + shallow( HashMap.class ) + align( HEADER + 4 + REF * capacity )
+	    + names.size() * shallow( node( "java.util.HashMap$Node" ) );
+
+	System.out.println(
+	    "-- footprint estimate, " + HEADER + " byte headers, "
+	    + REF + " byte references, " + ALIGN + " byte alignment"
+	);
+	System.out.println( line( "gates", gates.size(), gateBytes ) );
+	for (Map.Entry <String,long[]> k: kinds.entrySet()) {
+	    System.out.println( line(
+		"  " + k.getKey(), k.getValue()[0], k.getValue()[1]
+	    ) );
+	}
+	System.out.println( line( "wires", wires.size(), wireBytes ) );
+	System.out.println(
+	    "-- Logic.gates, Logic.wires and the name map " + setBytes
+	    + " bytes, total " + (gateBytes + wireBytes + setBytes) + " bytes"
+	);
+    }
+
+    /** @return a line of the report */
+    private static String line( String what, long count, long bytes ) {
+	return "-- " + what + " " + count + ", " + bytes + " bytes, "
+	    + String.format( "%.1f", bytes / (double)Math.max( count, 1 ) )
+	    + " each";
+    }
+
+    /** note the size of the queue, measuring it when it has grown
+     *  @param queue the pending events
+     */
+    static void queued( Collection <? extends Simulator.Event> queue ) {
+	int n = queue.size();
+	if (n <= highWater) return;
+	highWater = n;
+	if (n < measured + (measured / 4) + 1) return;
+	measured = n;
+	long bytes = 0;
+	for (Simulator.Event e: queue) bytes = bytes + shallow( e.getClass() ) + REF;
+	perEvent = bytes / (double)n;
+    }
+
+    /** print the bytes taken by the queue at its largest
+     */
+    static void reportQueue() {
+	System.out.println(
+	    "-- Simulator.eventSet high-water " + highWater + " events, about "
+	    + (long)(highWater * perEvent) + " bytes, "
+	    + String.format( "%.1f", perEvent ) + " per event"
+	);
+    }
+}
@@ -0,0 +1,281 @@
+/* FourStateSimulator.java
+ * Bit-parallel zero-delay simulation with unknown and undriven values
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Four-state simulation distinguishes 0, 1, X (unknown) and Z (not
+ *  driven).  Each signal is held in two bit planes, like the words of
+ *  BitSimulator: one holds the patterns where the signal can be 1, the
+ *  other those where it can be 0.  So 0 is (0,1), 1 is (1,0), X is (1,1)
+ *  and Z is (0,0), and and, or and not take two bitwise operations each.
+ *  A Z read by a gate input reads as X.
+ *
+ *  Circuits with feedback loops are simulated by ternary relaxation:
+ *  every gate starts at X and the circuit is evaluated repeatedly until
+ *  nothing changes, so loops that nothing initializes, such as rings of
+ *  not gates, stay X instead of silently reading as false.
+ *  @see BitSimulator
+ *  @see Vectors
+ */
+public class FourStateSimulator {
+    private final Netlist net;
+
+    /** the number of long words per signal */
+    public final int lanes;
+
+    // the planes of gate g are in one[g*lanes..] and zero[g*lanes..],
+    // followed by one signal that is always Z, for unused pins
+    private final long[] one;
+    private final long[] zero;
+
+    // the gates that are not inputs, in the order they are evaluated
+    private final int[] gates;
+
+    // true if the circuit has feedback loops
+    private final boolean cyclic;
+
+    /** Construct a four-state simulator
+     *  @param net the circuit, which may have feedback loops
+     *  @param lanes the number of long words per signal
+     */
+    public FourStateSimulator( Netlist net, int lanes ) {
+	this.net = net;
+	this.lanes = lanes;
+	this.one = new long[(net.gateCount + 1) * lanes];
+	this.zero = new long[(net.gateCount + 1) * lanes];
+
+	int[] order;
+	boolean loops = false;
+	try {
+	    order = new Levelized( net ).order;
+	} catch (Levelized.Cyclic e) {
+	    order = new int[net.gateCount];
+	    for (int g = 0; g < net.gateCount; g++) order[g] = g;
+	    loops = true;
+	}
+	cyclic = loops;
+	gates = new int[net.gateCount - net.inputs.length];
+	int n = 0;
+	for (int g: order) if (!net.isInput( g )) gates[n++] = g;
+    }
+
+    /** @return the number of patterns evaluated in each pass */
+    public int patterns() {
+	return 64 * lanes;
+    }
+
+    /** set one lane of an input
+     *  @param i the input number, an index into Netlist.inputs
+     *  @param lane the lane
+     *  @param canBeOne the patterns where the input can be 1
+     *  @param canBeZero the patterns where the input can be 0
+     */
+    public void setInput( int i, int lane, long canBeOne, long canBeZero ) {
+	int w = net.inputs[i] * lanes + lane;
+	one[w] = canBeOne;
+	zero[w] = canBeZero;
+    }
+
+    /** get the four-state value of a gate for one pattern
+     *  @param g the gate
+     *  @param p the pattern
+     *  @return the value, an index into Vectors.FOUR_STATE
+     */
+    public byte get( int g, int p ) {
+	int w = g * lanes + (p >> 6);
+	int b = p & 63;
+	int o = (int)(one[w] >>> b) & 1;
+	int z = (int)(zero[w] >>> b) & 1;
+	if (o != z) return (byte)o;	// 0 or 1
+	return (byte)((o == 1) ? 2 : 3);	// X or Z
+    }
+
+    /** evaluate all the gates for all patterns, in one pass if the
+     *  circuit is levelized, otherwise until no value changes
+     */
+    public void evaluate() {
+	if (!cyclic) {
+	    for (int g: gates) evaluate( g );
+	    return;
+	}
+	for (int g: gates) {
+	    java.util.Arrays.fill( one, g * lanes, (g + 1) * lanes, -1L );
+	    java.util.Arrays.fill( zero, g * lanes, (g + 1) * lanes, -1L );
+	}
+	boolean changed = true;
+	while (changed) {
+	    changed = false;
+	    for (int g: gates) changed |= evaluate( g );
+	}
+    }
+
+    /** evaluate one gate for all patterns
+     *  @param g the gate
+     *  @return true if any of its values changed
+     */
+    private boolean evaluate( int g ) {
+	int first = net.faninStart[g];
+	int last = net.faninStart[g + 1];
+	boolean changed = false;
+	for (int w = 0; w < lanes; w++) {
+	    long o;
+	    long z;
+	    switch (net.kind[g]) {
+	    case Netlist.AND:
+	    case Netlist.BUF:
+		o = -1L;
+		z = 0L;
+		for (int i = first; i < last; i++) {
+		    o &= canBeOne( net.fanin[i], w );
+		    z |= canBeZero( net.fanin[i], w );
+		}
+		break;
+	    case Netlist.OR:
+		o = 0L;
+		z = -1L;
+		for (int i = first; i < last; i++) {
+		    o |= canBeOne( net.fanin[i], w );
+		    z &= canBeZero( net.fanin[i], w );
+		}
+		break;
+	    case Netlist.NAND:
+		o = 0L;
+		z = -1L;
+		for (int i = first; i < last; i++) {
+		    o |= canBeZero( net.fanin[i], w );
+		    z &= canBeOne( net.fanin[i], w );
+		}
+		break;
+	    case Netlist.NOR:
+		o = -1L;
+		z = 0L;
+		for (int i = first; i < last; i++) {
+		    o &= canBeZero( net.fanin[i], w );
+		    z |= canBeOne( net.fanin[i], w );
+		}
+		break;
+	    case Netlist.XOR:
+	    case Netlist.XNOR:
+		// an unknown input makes the output unknown
+		o = 0L;
+		z = -1L;
+		for (int i = first; i < last; i++) {
+		    long io = canBeOne( net.fanin[i], w );
+		    long iz = canBeZero( net.fanin[i], w );
+		    long t = (o & iz) | (z & io);
+		    z = (o & io) | (z & iz);
+		    o = t;
+		}
+		if (net.kind[g] == Netlist.XNOR) {
+		    long t = o;
+		    o = z;
+		    z = t;
+		}
+		break;
+	    case Netlist.NOT:
+		o = canBeZero( net.fanin[first], w );
+		z = canBeOne( net.fanin[first], w );
+		break;
+	    default: // lut gates
+		o = 0L;
+		z = 0L;
+		long table = net.table[g];
+		for (int m = 0; m < (1 << (last - first)); m++) {
+		    // the patterns where the inputs can have the values of m
+		    long can = -1L;
+		    for (int i = first; i < last; i++) {
+			can &= (((m >> (i - first)) & 1) != 0)
+			    ? canBeOne( net.fanin[i], w )
+			    : canBeZero( net.fanin[i], w );
+		    }
+		    if (((table >>> m) & 1) != 0) {
+			o |= can;
+		    } else {
+			z |= can;
+		    }
+		}
+	    }
+	    int d = g * lanes + w;
+	    changed |= (one[d] != o) || (zero[d] != z);
+	    one[d] = o;
+	    zero[d] = z;
+	}
+	return changed;
+    }
+
+    /** @param lit a literal
+     *  @param w a lane
+     *  @return the patterns of the lane where the literal can be 1,
+     *  reading Z as X
+     */
+    private long canBeOne( int lit, int w ) {
+	if (lit == Netlist.NONE) return -1L;
+	int s = (lit >> 1) * lanes + w;
+	long floating = ~(one[s] | zero[s]);
+	return (((lit & 1) == 0) ? one[s] : zero[s]) | floating;
+    }
+
+    /** @param lit a literal
+     *  @param w a lane
+     *  @return the patterns of the lane where the literal can be 0,
+     *  reading Z as X
+     */
+    private long canBeZero( int lit, int w ) {
+	if (lit == Netlist.NONE) return -1L;
+	int s = (lit >> 1) * lanes + w;
+	long floating = ~(one[s] | zero[s]);
+	return (((lit & 1) == 0) ? zero[s] : one[s]) | floating;
+    }
+
+    /** simulate the vectors, a pass at a time, and print the settled
+     *  outputs for each vector in the same form as CycleSimulator,
+     *  using x and z for unknown and undriven values
+     *  @param vectors the input vectors
+     *  @see CycleSimulator
+     */
+    public void run( Iterable <byte[]> vectors ) {
+	CycleSimulator.printHeader( net );
+	final int inputs = net.inputs.length;
+	final int outputs = net.outputs.length;
+	byte[][] batch = new byte[patterns()][];
+	byte[] out = new byte[outputs];
+	long cycle = 0;
+
+	java.util.Iterator <byte[]> it = vectors.iterator();
+	while (it.hasNext()) {
+	    int n = 0;
+	    while ((n < batch.length) && it.hasNext()) batch[n++] = it.next();
+
+	    for (int i = 0; i < inputs; i++) {
+		for (int lane = 0; lane < lanes; lane++) {
+		    long o = 0;
+		    long z = 0;
+		    for (int b = 0; b < 64; b++) {
+			int p = lane * 64 + b;
+			if (p >= n) break;
+			switch (batch[p][i]) {
+			case 0: z |= 1L << b; break;
+			case 1: o |= 1L << b; break;
+			case 2: o |= 1L << b; z |= 1L << b; break;
+			default: // Z is neither
+			}
+		    }
+		    setInput( i, lane, o, z );
+		}
+	    }
+
+	    evaluate();
+
+	    for (int p = 0; p < n; p++) {
+		for (int k = 0; k < outputs; k++) {
+		    out[k] = get( net.outputs[k], p );
+		}
+		CycleSimulator.printCycle(
+		    cycle, Vectors.toString( batch[p] ), Vectors.toString( out )
+		);
+		cycle = cycle + 1;
+	    }
+	}
+    }
+}
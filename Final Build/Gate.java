@@ -33,8 +33,71 @@ public abstract class Gate {
     public final String name;
     protected final float delay;	// the delay of this gate, in seconds
 
+    // the least delay and the range of delays, see JitterModel
+    protected final float base;
+    protected final float span;
+
+    // the number of this gate in declaration order, set by Logic, and
+    // how many random delays it has drawn, see JitterModel
+    int id = -1;
+    long draws = 0;
+
     // information about gate connections and logic values is all in subclasses
 
+    // Logic values are held in two bit planes, as in FourStateSimulator:
+    // bit 0 is set if the value can be 1, bit 1 if it can be 0, so and,
+    // or and not take two bitwise operations each.  No gate drives Z.
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int X = 3;		// unknown
+
+    // true if every gate starts out unknown, instead of false, see Logic
+    static boolean fourState = false;
+
+    /** @return the value of every gate input and output at the start */
+    static int initial() {
+	return fourState ? X : FALSE;
+    }
+
+    /** @param b a boolean
+     *  @return the logic value of b
+     */
+    static int of( boolean b ) {
+	return b ? TRUE : FALSE;
+    }
+
+    /** @param v a logic value
+     *  @return its name, as printed in the changes
+     */
+    static String name( int v ) {
+	if (v == TRUE) return "true";
+	if (v == FALSE) return "false";
+	return "x";
+    }
+
+    /** @param v a logic value
+     *  @return not v
+     */
+    static int not( int v ) {
+	return ((v & TRUE) << 1) | ((v & FALSE) >> 1);
+    }
+
+    /** @param a a logic value
+     *  @param b a logic value
+     *  @return a and b
+     */
+    static int and( int a, int b ) {
+	return (a & b & TRUE) | ((a | b) & FALSE);
+    }
+
+    /** @param a a logic value
+     *  @param b a logic value
+     *  @return a or b
+     */
+    static int or( int a, int b ) {
+	return ((a | b) & TRUE) | (a & b & FALSE);
+    }
+
     /** Constructor used only from within subclasses of class Gate
      *  @param name used to initialize the final field, represents gate type
      *  @param delay used to initialize the final field, the delay of the gate
@@ -43,9 +106,18 @@ public abstract class Gate {
     protected Gate( String name, float delay ) {
 	this.name = name;
 	this.delay = delay;
+	this.base = JitterModel.base( name, delay );
+	this.span = JitterModel.span( name, delay );
     }
 
     /** The public use this factory to construct gates
+     *  The description is gate name kind delay, except that lut gates
+     *  add the number of inputs and the truth table in hexadecimal,
+     *  where bit i of the table gives the output when input pin n
+     *  (counting from 0) has the value of bit n of i.  And, or, nand,
+     *  nor, xor and xnor gates may add a number of inputs; and and or
+     *  gates without one have two, as do the others.  Clock gates add
+     *  their period, their duty cycle and their phase, see ClockGate.
      *  @param sc the scanner from which the textual gate description is read
      *  @throws ConstructorFailure to suppress the construction of ill
      *  formed gates
@@ -87,14 +159,87 @@ public abstract class Gate {
 	);
 
 	// now construct the right kind of gate
-	if ("and".equals( kind )) {
-	    newGate = new AndGate( name, delay );
-	} else if ("or".equals( kind )) {
-	    newGate = new OrGate( name, delay );
+	if ("and".equals( kind ) || "or".equals( kind )
+	||  "nand".equals( kind ) || "nor".equals( kind )
+	||  "xor".equals( kind ) || "xnor".equals( kind )) {
+	    final int inputs = ScanSupport.nextInt( sc, 0 );
+	    if (inputs < 0) {
+		Errors.warn( "Illegal input count: gate " + name + " " + kind
+		    + " " + delay + " " + inputs
+		);
+		sc.nextLine();
+		throw new ConstructorFailure();
+	    } else if ((inputs == 0) && "and".equals( kind )) {
+		newGate = new AndGate( name, delay );
+	    } else if ((inputs == 0) && "or".equals( kind )) {
+		newGate = new OrGate( name, delay );
+	    } else {
+		newGate = new CountingGate(
+		    name, delay, kind, (inputs == 0) ? 2 : inputs
+		);
+	    }
 	} else if ("not".equals( kind )) {
 	    newGate = new NotGate( name, delay );
+	} else if ("buf".equals( kind )) {
+	    newGate = new BufGate( name, delay );
+	} else if ("clock".equals( kind )) {
+	    final float period;
+	    final float duty;
+	    final float phase;
+	    try {
+		period = ScanSupport.nextFloat(
+		    sc, ()->"gate " + name + " clock " + delay + " ???"
+		);
+		duty = ScanSupport.nextFloat(
+		    sc, ()->"gate " + name + " clock " + delay + " " + period
+			+ " ???"
+		);
+		phase = ScanSupport.nextFloat(
+		    sc, ()->"gate " + name + " clock " + delay + " " + period
+			+ " " + duty + " ???"
+		);
+	    } catch (ScanSupport.NotFound e) {
+		throw new ConstructorFailure();
+	    }
+	    if ((period <= 0.0F) || (duty <= 0.0F) || (duty >= 1.0F)
+	    ||  (phase < 0.0F) || (phase >= 1.0F)) {
+		Errors.warn( "Illegal clock: gate " + name + " clock " + delay
+		    + " " + period + " " + duty + " " + phase
+		);
+		sc.nextLine();
+		throw new ConstructorFailure();
+	    }
+	    newGate = new ClockGate( name, delay, period, duty, phase );
 	} else if ("const".equals( kind )) {
 	    newGate = new ConstGate( name, delay );
+	} else if ("lut".equals( kind )) {
+	    final int inputs;
+	    final long table;
+	    try {
+		inputs = ScanSupport.nextInt(
+		    sc, ()->"gate " + name + " lut " + delay + " ???"
+		);
+		table = ScanSupport.nextHex(
+		    sc, ()->"gate " + name + " lut " + delay + " " + inputs
+			+ " ???"
+		);
+	    } catch (ScanSupport.NotFound e) {
+		throw new ConstructorFailure();
+	    }
+	    if ((inputs < 1) || (inputs > LutGate.MAX_INPUTS)) {
+		Errors.warn( "Illegal input count: gate " + name + " lut "
+		    + delay + " " + inputs
+		);
+		sc.nextLine();
+		throw new ConstructorFailure();
+	    }
+	    if ((inputs < LutGate.MAX_INPUTS) && ((table >>> (1 << inputs)) != 0)) {
+		Errors.warn( "Truth table too big: gate " + name + " lut "
+		    + delay + " " + inputs + " " + Long.toHexString( table )
+		    // don't throw a failure here, we can build a gate with this
+		);
+	    }
+	    newGate = new LutGate( name, delay, inputs, table );
 	} else {
 	    Errors.warn( "Unknown gate kind: gate " + name + " " + kind );
 	    sc.nextLine();
@@ -153,6 +298,18 @@ public abstract class Gate {
      */
     public abstract void checkSanity();
 
+    /** get the kind of this gate, as it is named in the circuit description
+     *  @return the kind, for example "and"
+     */
+    public abstract String kind();
+
+    /** get the number of input pins this gate has, single input gates
+     *  number their pin 0, gates with more inputs number them from 1
+     *  @return the count of input pins
+     *  @see registerInput
+     */
+    public abstract int inputCount();
+
     // Simulation methods
 
     /** simulate the change of one of this gate's inputs
@@ -160,89 +317,10 @@ public abstract class Gate {
      *  @param dstPin the pin that changes
      *  @param v the new logic value
      */
-    public abstract void inputChangeEvent( float time, int dstPin, boolean v );
+    public abstract void inputChangeEvent( float time, int dstPin, int v );
 
 } // abstract class Gate
 
-/** Gathers all of the properties common to single-output gates
- *  Specifically, all LogicGates drive a single list of output wires
- *  with a single output value when an OutputChangeEvent occurs.
- *  @see Wire
- *  @see Gate
- */
-abstract class LogicGate extends Gate {
-    // set of all wires out of this gate
-    private LinkedList <Wire> outgoing = new LinkedList <Wire> ();
-
-    // this gate's value, computed by input change events
-
-    protected boolean value = false;
-
-    /** a gate's most recent actual output value */
-    private boolean outValue = false;
-
-    /** The constructor used only from subclasses of LogicGate
-     *  @param name used to initialize the final field
-     *  @param delay used to initialize the final field
-     *  @see NotGate
-     */
-    LogicGate( String name, float delay ) {
-	super( name, delay );
-    }
-
-    /** tell the gate that one of its output pins is in use
-     *  @param w the wire that is connected
-     *  @param pinName the name of the pin to be set
-     *  @return corresponding pin number
-     */
-    public final int registerOutput( Wire w, String pinName ) {
-	if ("out".equals( pinName )) {
-	    outgoing.add( w );
-	    return 0;
-	} else {
-	    Errors.warn( "Illegal output pin: " + name + " " + pinName );
-	    return -1;
-	}
-    }
-
-    /** get the name of the output pin, given its number,
-     *  if the pin number is correct
-     *  @param pinNumber the output pin number
-     *  @return pinName the name of the output pin
-     */
-    public final String outPinName( int pinNumber ) {
-	if (pinNumber == 0) return "out";
-	return "???";
-    }
-
-    // Simulation methods
-
-    /** Simulate an output change on this wire
-     *  Passes the new value to the input of the gate to which this wire goes.
-     *  Uses the this.value field to determine the new output value.
-     *  Output change events are scheduled (directly or indirectly) by the
-     *  input change event of the actual gate object. So called micro events,
-     *  changes where a gate's output would change from true to true, are
-     *  suppressed by a low pass filter
-     *  @param time tells when this wire's input changes
-     *  @see inputChangeEvent
-     *  @see Wire
-     */
-    protected final void outputChangeEvent( float time ) {
-	if (value != outValue) { // only if the output actually changes
-	    outValue = value;
-	    System.out.println(
-		"At " + time + " " + toString() +
-		" out " + " changes to " + value
-	    );
-	    for (Wire w: outgoing) {
-		w.inputChangeEvent( time, value );
-	    }
-	}
-    }
-
-} // abstract class LogicGate
-
 /** Handles the properties common to logic gates with two inputs
  *  Specifically, all two-input gates have two input wires, in1 an in2.
  *  @see Gate
@@ -253,9 +331,9 @@ abstract class TwoInputGate extends LogicGate {
     protected boolean in1used = false;
     protected boolean in2used = false;
 
-    // Boolean values of inputs
-    protected boolean in1 = false;
-    protected boolean in2 = false;
+    // logic values of inputs
+    protected int in1 = initial();
+    protected int in2 = initial();
 
     /** The constructor used only from subclasses of TwoInputGate
      *  @param name used to initialize the final field
@@ -311,6 +389,13 @@ abstract class TwoInputGate extends LogicGate {
 	if (!in2used) Errors.warn( "Unused input pin: " + name + " in2" );
     }
 
+    /** get the number of input pins of a two input gate
+     *  @return always 2
+     */
+    public final int inputCount() {
+	return 2;
+    }
+
     // Simulation methods
 
     /** update the output value of a gate based on its input values
@@ -330,7 +415,7 @@ abstract class TwoInputGate extends LogicGate {
      *  @see AndGate
      *  @see OrGate
      */
-    public void inputChangeEvent( float time, int dstPin, boolean v ) {
+    public void inputChangeEvent( float time, int dstPin, int v ) {
 	if (dstPin == 1) {
 	    in1 = v;
 	} else if (dstPin == 2) {
@@ -362,6 +447,13 @@ final class AndGate extends TwoInputGate {
 	return "gate " + name + " and " + delay;
     }
 
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "and";
+    }
+
     // Simulation methods
 
     /** update the output value of a gate based on its input values
@@ -373,12 +465,12 @@ final class AndGate extends TwoInputGate {
      *  @see inputChangeEvent
      */
     void updateValue( float time ) {
-	boolean newVal = in1 & in2;
+	int newVal = and( in1, in2 );
 	if (newVal != value) {
 	    value = newVal;
 	    Simulator.schedule(
 		new Simulator.Event(
-		    time + (delay * 0.95f) + PRNG.randomFloat( delay * 0.1f )) {
+		    time + base + (span * JitterModel.next( this ))) {
 		    void trigger(){
 			outputChangeEvent( time );
 		    }
@@ -410,6 +502,13 @@ final class OrGate extends TwoInputGate {
 	return "gate " + name + " or " + delay;
     }
 
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "or";
+    }
+
     // Simulation methods
 
     /** update the output value of a gate based on its input values
@@ -420,12 +519,12 @@ final class OrGate extends TwoInputGate {
      *  @see outputChangeEvent
      */
     void updateValue( float time ) {
-	boolean newVal = in1 | in2;
+	int newVal = or( in1, in2 );
 	if (newVal != value) {
 	    value = newVal;
 	    Simulator.schedule(
 		new Simulator.Event(
-		    time + (delay * 0.95f) + PRNG.randomFloat( delay * 0.1f )) {
+		    time + base + (span * JitterModel.next( this ))) {
 		    void trigger(){
 			outputChangeEvent( time );
 		    }
@@ -492,9 +591,10 @@ final class NotGate extends LogicGate {
     public void checkSanity() {
 	if (!inUsed) Errors.warn( "Unused input pin: " + name + " in" );
 
-	// this is a good time to launch the simulation
-	value = true;
-	Simulator.schedule(
+	// this is a good time to launch the simulation, unless the output
+	// stays unknown until the input is known
+	value = not( initial() );
+	if (value != initial()) Simulator.schedule(
 	    new Simulator.Event( this.delay ){
 		void trigger(){
 		    outputChangeEvent( time );
@@ -510,6 +610,20 @@ final class NotGate extends LogicGate {
 	return "gate " + name + " not " + delay;
     }
 
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "not";
+    }
+
+    /** get the number of input pins of a not gate
+     *  @return always 1
+     */
+    public int inputCount() {
+	return 1;
+    }
+
     // Simulation methods
 
     /** simulate the change of one of this gate's inputs which
@@ -520,11 +634,11 @@ final class NotGate extends LogicGate {
      *  @param v the new logic value
      *  @see outputChangeEvent
      */
-    public void inputChangeEvent( float time, int dstPin, boolean v ) {
-	value = !v;
+    public void inputChangeEvent( float time, int dstPin, int v ) {
+	value = not( v );
 	Simulator.schedule(
 	    new Simulator.Event(
-		time + (delay * 0.95f) + PRNG.randomFloat( delay * 0.1f )){
+		time + base + (span * JitterModel.next( this ))){
 		    void trigger(){
 			outputChangeEvent( time );
 		    }
@@ -534,10 +648,110 @@ final class NotGate extends LogicGate {
 
 } // class NotGate
 
+/** Handles the properties specific to buf gates, which pass their input
+ *  through after their delay.
+ *  @see LogicGate
+ *  @see NotGate
+ */
+final class BufGate extends LogicGate {
+    // usage records for inputs
+    private boolean inUsed = false;
+
+    /** The constructor used only from within class Gate
+     *  @param name used to initialize the final field
+     *  @param delay used to initialize the final field
+     */
+    public BufGate( String name, float delay ) {
+	super( name, delay );
+    }
+
+    /** tell the gate that its input pin is in use
+     *  @param w the wire that is connected
+     *  @param pinName the name of the pin
+     *  @return corresponding pin number
+     */
+    public int registerInput( Wire w, String pinName ) {
+	if ("in".equals( pinName )) {
+	    if (inUsed) Errors.warn(
+		"Multiple uses of input pin: " + name + " in"
+	    );
+	    inUsed = true;
+	    return 0;
+	} else {
+	    Errors.warn( "Illegal input pin: " + name + " " + pinName );
+	    return -1;
+	}
+    }
+
+    /** get the name of the input pin, given its number
+     * @param pinNumber the pin number, should be 0.
+     * @return pinName the name of the pin.
+     */
+    public String inPinName( int pinNumber ) {
+	if (pinNumber == 0) return "in";
+	return "???";
+    }
+
+    /** check the sanity of this gate's connections, by
+     *  ensuring that its input pin is in use by a wire
+     *  @see Wire
+     */
+    public void checkSanity() {
+	if (!inUsed) Errors.warn( "Unused input pin: " + name + " in" );
+    }
+
+    /** reconstruct the textual description of this gate
+     *  @return the textual description
+     */
+    public String toString() {
+	return "gate " + name + " buf " + delay;
+    }
+
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "buf";
+    }
+
+    /** get the number of input pins of a buf gate
+     *  @return always 1
+     */
+    public int inputCount() {
+	return 1;
+    }
+
+    // Simulation methods
+
+    /** simulate the change of this gate's input, and if the output
+     *  changes then an output change event is scheduled
+     *  @param time the time when the input changes
+     *  @param dstPin the pin that changes
+     *  @param v the new logic value
+     *  @see outputChangeEvent
+     */
+    public void inputChangeEvent( float time, int dstPin, int v ) {
+	if (v != value) {
+	    value = v;
+	    Simulator.schedule(
+		new Simulator.Event(
+		    time + base + (span * JitterModel.next( this ))) {
+		    void trigger(){
+			outputChangeEvent( time );
+		    }
+		}
+	    );
+	}
+    }
+
+} // class BufGate
+
 /** Handles the properties specific to const gates.
  *  After a const gate's delay has passed then all
  *  of the wires connected to the true output pin
- *  will turn from false  to true.
+ *  will turn from false  to true.  In four-state
+ *  simulation, where they start unknown, the wires
+ *  from the false output pin turn false as well.
  *  @see LogicGate
  */
 final class ConstGate extends Gate {
@@ -630,6 +844,20 @@ final class ConstGate extends Gate {
 	return "gate " + name + " const " + delay;
     }
 
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "const";
+    }
+
+    /** get the number of input pins of a const gate
+     *  @return always 0
+     */
+    public int inputCount() {
+	return 0;
+    }
+
     // Simulation methods
 
     /** simulate the change of one of this gate's inputs,
@@ -639,20 +867,223 @@ final class ConstGate extends Gate {
      *  @param dstPin the pin that changes
      *  @param v the new logic value
      */
-    public void inputChangeEvent( float time, int dstPin, boolean v ) {
+    public void inputChangeEvent( float time, int dstPin, int v ) {
 	Errors.fatal( "Input should never change: " + toString() );
     }
     /** simulate output changes for wires connected to the
-     *  true output
+     *  true output, and in four-state simulation the false output
      *  @param time the time of the event
      */
     private void outputChangeEvent( float time ) {
+	if (ActivityProfile.on) ActivityProfile.changed( this );
 	System.out.println(
 	    "At " + time + " " + toString() + " true " + " changes to true"
 	);
 	for (Wire w: outgoingTrue) {
-	    w.inputChangeEvent( time, true );
+	    w.inputChangeEvent( time, TRUE );
+	}
+	if (fourState) {
+	    System.out.println(
+		"At " + time + " " + toString() + " false " + " changes to false"
+	    );
+	    for (Wire w: outgoingFalse) {
+		w.inputChangeEvent( time, FALSE );
+	    }
 	}
     }
 
 } // class ConstGate
+
+/** Handles and, or, nand, nor, xor and xnor gates with any number of
+ *  inputs.  Instead of reading all of its inputs when one changes, the
+ *  gate keeps a count of its inputs at the controlling value, false for
+ *  and and nand, true for or and nor; while the count is nonzero the
+ *  output is decided by it, so each input change takes the same time
+ *  however wide the gate is.  Xor and xnor gates count their true
+ *  inputs and take the parity of the count.  In four-state simulation
+ *  the gate also counts its unknown inputs; while none is at the
+ *  controlling value, any unknown input makes the output unknown, as
+ *  does any for xor and xnor.  A single input gate has one pin, in,
+ *  others have pins in1 to ink, as for lut gates.
+ *  @see LogicGate
+ *  @see LutGate
+ */
+final class CountingGate extends LogicGate {
+    private final String kind;		// and, or, nand, nor, xor or xnor
+    private final int inputs;		// the number of input pins
+    private final boolean controlling;	// the input value that decides
+    private final int decides;		// the same, as a logic value
+    private final boolean parity;	// true for xor and xnor
+    private final boolean inverted;	// true for nand, nor and xnor
+
+    // usage records and values of inputs, indexed from 0
+    private final boolean[] used;
+    private final byte[] in;
+
+    // the number of inputs now at the controlling value, and unknown
+    private int count;
+    private int unknown;
+
+    /** The constructor used only from within class Gate
+     *  @param name used to initialize the final field
+     *  @param delay used to initialize the final field
+     *  @param kind and, or, nand, nor, xor or xnor
+     *  @param inputs the number of input pins
+     */
+    public CountingGate( String name, float delay, String kind, int inputs ) {
+	super( name, delay );
+	this.kind = kind;
+	this.inputs = inputs;
+	this.parity = "xor".equals( kind ) || "xnor".equals( kind );
+	this.controlling = parity || "or".equals( kind ) || "nor".equals( kind );
+	this.inverted = "nand".equals( kind ) || "nor".equals( kind )
+	    || "xnor".equals( kind );
+	this.decides = of( controlling );
+	used = new boolean[inputs];
+	in = new byte[inputs];
+
+	// all inputs start out false, or unknown
+	java.util.Arrays.fill( in, (byte)initial() );
+	count = (fourState || controlling) ? 0 : inputs;
+	unknown = fourState ? inputs : 0;
+    }
+
+    /** convert a pin name to an index into used and in, without
+     *  searching all the pins, since a gate may have thousands
+     *  @param pinName the name of a pin
+     *  @return the index, or -1 if there is no such pin
+     */
+    private int index( String pinName ) {
+	if (inputs == 1) return "in".equals( pinName ) ? 0 : -1;
+	if (!pinName.startsWith( "in" ) || (pinName.length() > 12)) return -1;
+	final int pin;
+	try {
+	    pin = Integer.parseInt( pinName.substring( 2 ) );
+	} catch (NumberFormatException e) {
+	    return -1;
+	}
+	if (!inPinName( pin ).equals( pinName )) return -1;
+	return pin - 1;
+    }
+
+    /** tell the gate that one of its input pins is in use
+     *  @param w the wire that is connected
+     *  @param pinName the name of the pin
+     *  @return corresponding pin number
+     */
+    public int registerInput( Wire w, String pinName ) {
+	int i = index( pinName );
+	if (i < 0) {
+	    Errors.warn( "Illegal input pin: " + name + " " + pinName );
+	    return -1;
+	}
+	if (used[i]) Errors.warn(
+	    "Multiple uses of input pin: " + name + " " + pinName
+	);
+	used[i] = true;
+	return (inputs == 1) ? i : i + 1;
+    }
+
+    /** get the name of the input pin, given its number
+     * @param pinNumber the pin number
+     * @return pinName the name of the pin
+     */
+    public String inPinName( int pinNumber ) {
+	if (inputs == 1) return (pinNumber == 0) ? "in" : "???";
+	if ((pinNumber < 1) || (pinNumber > inputs)) return "???";
+	return "in" + pinNumber;
+    }
+
+    /** check the sanity of this gate's connections, by ensuring
+     *  that all of its input pins are in use by a wire,
+     *  also begins the simulation for nand, nor and xnor gates, whose
+     *  output is true when all inputs are false; in four-state
+     *  simulation all outputs start unknown
+     *  @see outputChangeEvent
+     */
+    public void checkSanity() {
+	for (int i = 0; i < inputs; i++) {
+	    if (!used[i]) Errors.warn( "Unused input pin: " + name + " "
+		+ inPinName( (inputs == 1) ? i : i + 1 )
+	    );
+	}
+
+	// this is a good time to launch the simulation
+	value = output();
+	if (value != initial()) {
+	    Simulator.schedule(
+		new Simulator.Event( this.delay ){
+		    void trigger(){
+			outputChangeEvent( time );
+		    }
+		}
+	    );
+	}
+    }
+
+    /** reconstruct the textual description of this gate
+     *  @return the textual description
+     */
+    public String toString() {
+	return "gate " + name + " " + kind + " " + delay + " " + inputs;
+    }
+
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return kind;
+    }
+
+    /** get the number of input pins of this gate
+     *  @return the count
+     */
+    public int inputCount() {
+	return inputs;
+    }
+
+    /** @return the output called for by the counts */
+    private int output() {
+	if (parity) {
+	    if (unknown > 0) return X;
+	    return of( ((count & 1) != 0) != inverted );
+	}
+	if (count > 0) return of( controlling != inverted );
+	if (unknown > 0) return X;
+	return of( !controlling != inverted );
+    }
+
+    // Simulation methods
+
+    /** simulate the change of one of this gate's inputs, the counts are
+     *  adjusted and the new output follows from them, and if the output
+     *  changes then an output change event is scheduled
+     *  @param time the time when the input changes
+     *  @param dstPin the pin that changes
+     *  @param v the new logic value
+     *  @see outputChangeEvent
+     */
+    public void inputChangeEvent( float time, int dstPin, int v ) {
+	int i = (inputs == 1) ? dstPin : dstPin - 1;
+	int old = in[i];
+	if (old == v) return;
+	in[i] = (byte)v;
+	if (old == decides) count = count - 1;
+	if (old == X) unknown = unknown - 1;
+	if (v == decides) count = count + 1;
+	if (v == X) unknown = unknown + 1;
+	int newVal = output();
+	if (newVal != value) {
+	    value = newVal;
+	    Simulator.schedule(
+		new Simulator.Event(
+		    time + base + (span * JitterModel.next( this ))) {
+		    void trigger(){
+			outputChangeEvent( time );
+		    }
+		}
+	    );
+	}
+    }
+
+} // class CountingGate
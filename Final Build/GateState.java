@@ -0,0 +1,33 @@
+/* GateState.java
+ * The state of the gates of a netlist during timed simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** The state of every gate of a netlist during timed simulation.
+ *  Logical processes simulating parts of a circuit share one of these,
+ *  each only touches the entries for its own gates.
+ *  @see LogicalProcess
+ *  @see CounterRNG
+ */
+final class GateState {
+    final boolean[] pin;	// input values, indexed like Netlist.fanin
+    final boolean[] value;	// values computed by input changes
+    final boolean[] outValue;	// most recent output values
+    final int[] ones;		// input pins now true, for wide gates
+    final long seed;		// the seed of the random delays
+    final long[] draws;		// random numbers drawn by each gate
+
+    /** initial state, with all wires false
+     *  @param net the circuit
+     *  @param seed the seed for random delays
+     */
+    GateState( Netlist net, long seed ) {
+	pin = new boolean[net.fanin.length];
+	value = new boolean[net.gateCount];
+	outValue = new boolean[net.gateCount];
+	ones = new int[net.gateCount];
+	this.seed = seed;
+	draws = new long[net.gateCount];
+    }
+}
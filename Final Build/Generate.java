@@ -0,0 +1,487 @@
+/* Generate.java
+ * Generator of large synthetic circuits
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Writes circuit descriptions that Logic reads, in families whose size
+ *  is set by parameters, for testing how the simulators scale.  Each
+ *  gate is written just before the wires into it, so the description
+ *  is streamed out as it is made, and memory use does not grow with the
+ *  number of gates, except for the multiplier, which keeps one row of
+ *  2n signal names.  The first line is a comment holding the command
+ *  line that made the circuit.
+ *
+ *  usage: java Generate family [options]
+ *  dag, a random acyclic circuit fed by const gates, where
+ *      -gates n sets the number of gates, default 1000,
+ *      -inputs n sets the number of const gates, default 16,
+ *      -fanin n sets the inputs per gate, default 2, making not gates
+ *      for 1, and and or gates for 2, lut gates for 3 to 6, and wider
+ *      and, or, nand and nor gates for more,
+ *      -fanout n limits the wires out of each gate, default no limit,
+ *      -window n sets how many gates back inputs may come from,
+ *      default 1024, and -seed s sets the seed, default 1
+ *  ripple, a ripple-carry adder of -bits n bits, default 32
+ *  cla, a carry-lookahead adder of -bits n bits, default 32
+ *  multiplier, an array multiplier of -bits n bits, default 16
+ *  ring, -rings n ring oscillators, default 1, of -length n not
+ *      gates, default 5, which must be odd
+ *  chain, an inverter chain of -length n not gates, default 1000,
+ *      fed by a const gate
+ *  and for all families,
+ *  -delay d sets the gate delay, default 1.0,
+ *  -wire d sets the wire delay, default 0.1,
+ *  -o file writes the circuit to file instead of the standard output,
+ *  -check, with -o, reads the file back as Logic would and fails if
+ *  Logic would report any errors
+ *  @see Logic
+ */
+public class Generate {
+    // kinds of the gates of random circuits too wide for lut gates
+    private static final String[] WIDE = { "and", "or", "nand", "nor" };
+
+    private final Writer out;
+    private final String delay;
+    private final String wireDelay;
+    private long gates = 0;
+    private long wires = 0;
+
+    /** @param out where to write the circuit
+     *  @param delay the delay of each gate
+     *  @param wireDelay the delay of each wire
+     */
+    Generate( Writer out, float delay, float wireDelay ) {
+	this.out = out;
+	this.delay = plain( delay );
+	this.wireDelay = plain( wireDelay );
+    }
+
+    /** @param t a time
+     *  @return t as ScanSupport reads it, without an exponent
+     */
+    private static String plain( float t ) {
+	return new java.math.BigDecimal( Float.toString( t ) ).toPlainString();
+    }
+
+    /** write a line of the description
+     *  @param line the line
+     */
+    private void line( String line ) {
+	try {
+	    out.write( line );
+	    out.write( '\n' );
+	} catch (IOException e) {
+	    Errors.fatal( "Can't write the circuit" );
+	}
+    }
+
+    /** write a gate
+     *  @param name its name
+     *  @param kind its kind
+     *  @return its output, as the start of a wire from it
+     */
+    private String gate( String name, String kind ) {
+	return gate( name, kind, "" );
+    }
+
+    /** write a gate with more fields after its delay
+     *  @param name its name
+     *  @param kind its kind
+     *  @param more the fields after the delay, inputs and table for lut
+     *  gates, inputs for wide gates
+     *  @return its output, as the start of a wire from it
+     */
+    private String gate( String name, String kind, String more ) {
+	line( "gate " + name + " " + kind + " " + delay + more );
+	gates = gates + 1;
+	return name + ("const".equals( kind ) ? " true" : " out");
+    }
+
+    /** write a wire
+     *  @param src its source, a gate output as returned by gate
+     *  @param dst the name of the gate it goes to
+     *  @param pin the input pin of that gate
+     */
+    private void wire( String src, String dst, String pin ) {
+	line( "wire " + src + " " + dst + " " + pin + " " + wireDelay );
+	wires = wires + 1;
+    }
+
+    // logic functions from two-input gates, each returning its output
+
+    private String not( String name, String a ) {
+	String g = gate( name, "not" );
+	wire( a, name, "in" );
+	return g;
+    }
+
+    private String and( String name, String a, String b ) {
+	String g = gate( name, "and" );
+	wire( a, name, "in1" );
+	wire( b, name, "in2" );
+	return g;
+    }
+
+    private String or( String name, String a, String b ) {
+	String g = gate( name, "or" );
+	wire( a, name, "in1" );
+	wire( b, name, "in2" );
+	return g;
+    }
+
+    /** exclusive or, as (a or b) and not (a and b)
+     *  @return the output, and the output of the inner and gate, which
+     *  adders use as a carry, in an array of two
+     */
+    private String[] xor( String name, String a, String b ) {
+	String both = and( name + "a", a, b );
+	String either = or( name + "o", a, b );
+	String notBoth = not( name + "n", both );
+	return new String[] { and( name, either, notBoth ), both };
+    }
+
+    /** a full adder, or a half adder if c is null
+     *  @param name the name of the sum gate, the prefix of the others
+     *  @return the sum and the carry out, in an array of two
+     */
+    private String[] add( String name, String a, String b, String c ) {
+	if (c == null) return xor( name, a, b );
+	String[] p = xor( name + "p", a, b );
+	String[] s = xor( name, p[0], c );
+	return new String[] { s[0], or( name + "c", p[1], s[1] ) };
+    }
+
+    /** a random acyclic circuit
+     *  @param count the number of gates, besides the const gates
+     *  @param inputs the number of const gates
+     *  @param fanin the number of inputs of each gate
+     *  @param fanout the most wires out of each gate, or 0 for no limit
+     *  @param window how many gates back inputs may come from
+     *  @param random the source of random choices
+     */
+    void dag( long count, int inputs, int fanin, int fanout, int window,
+	Random random
+    ) {
+	// the most recent gates, by number modulo window, and their fanout
+	String[] recent = new String[window];
+	int[] used = new int[window];
+	long made = 0;
+
+	for (int i = 0; i < inputs; i++) {
+	    recent[(int)(made % window)] = gate( "I" + i, "const" );
+	    made = made + 1;
+	}
+	for (long g = 0; g < count; g++) {
+	    String name = "G" + g;
+	    String out;
+	    if (fanin == 1) {
+		out = gate( name, "not" );
+	    } else if (fanin == 2) {
+		out = gate( name, random.nextBoolean() ? "and" : "or" );
+	    } else if (fanin <= LutGate.MAX_INPUTS) {
+		long table = random.nextLong() & ((fanin == 6)
+		    ? -1L : (1L << (1 << fanin)) - 1);
+		out = gate( name, "lut",
+		    " " + fanin + " " + Long.toHexString( table )
+		);
+	    } else {
+		out = gate( name, WIDE[random.nextInt( WIDE.length )],
+		    " " + fanin
+		);
+	    }
+	    int span = (int)Math.min( made, window );
+	    for (int i = 1; i <= fanin; i++) {
+		int pick = (int)((made - 1 - random.nextInt( span )) % window);
+		if (fanout > 0) {
+		    // take the next most recent gate with wires to spare
+		    for (int tries = 0; (used[pick] >= fanout) && (tries < span);
+			tries++
+		    ) {
+			pick = (pick + window - 1) % window;
+			if (recent[pick] == null) pick = (int)((made - 1) % window);
+		    }
+		}
+		used[pick]++;
+		String src = recent[pick];
+		if (src.endsWith( " true" ) && random.nextBoolean()) {
+		    src = src.substring( 0, src.length() - 4 ) + "false";
+		}
+		wire( src, name, (fanin == 1) ? "in" : "in" + i );
+	    }
+	    int slot = (int)(made % window);
+	    recent[slot] = out;
+	    used[slot] = 0;
+	    made = made + 1;
+	}
+    }
+
+    /** a ripple-carry adder of n-bit inputs A and B and carry in CIN,
+     *  giving sum bits S0 to Sn-1 and carry out Sn
+     *  @param n the number of bits
+     */
+    void ripple( int n ) {
+	String c = gate( "CIN", "const" );
+	for (int i = 0; i < n; i++) {
+	    String a = gate( "A" + i, "const" );
+	    String b = gate( "B" + i, "const" );
+	    c = add( "S" + i, a, b, c )[1];
+	}
+	not( "C" + n, c );
+	not( "S" + n, "C" + n + " out" );
+    }
+
+    /** a carry-lookahead adder of n-bit inputs A and B and carry in
+     *  CIN, giving sum bits S0 to Sn-1 and carry out Sn; the carries are
+     *  computed by a Kogge-Stone parallel prefix of generate and
+     *  propagate signals, so their depth grows as log n
+     *  @param n the number of bits
+     */
+    void cla( int n ) {
+	String cin = gate( "CIN", "const" );
+	String[] p = new String[n];	// propagate, a xor b
+	String[] gen = new String[n];	// generate over the prefix so far
+	String[] prop = new String[n];	// propagate over the prefix so far
+	for (int i = 0; i < n; i++) {
+	    String a = gate( "A" + i, "const" );
+	    String b = gate( "B" + i, "const" );
+	    String[] x = xor( "P" + i, a, b );
+	    p[i] = x[0];
+	    gen[i] = x[1];
+	    prop[i] = p[i];
+	}
+	// fold the carry in into bit 0
+	gen[0] = or( "K0c", gen[0], and( "K0d", prop[0], cin ) );
+
+	for (int d = 1, level = 1; d < n; d = 2 * d, level++) {
+	    // from the top down, so each step reads the previous level
+	    for (int i = n - 1; i >= d; i--) {
+		String k = "K" + level + "_" + i;
+		String t = and( k + "t", prop[i], gen[i - d] );
+		gen[i] = or( k + "g", gen[i], t );
+		// a prefix reaching bit 0 is final, its propagate is not needed
+		if (i >= 2 * d) prop[i] = and( k + "p", prop[i], prop[i - d] );
+	    }
+	}
+
+	xor( "S0", p[0], cin );
+	for (int i = 1; i < n; i++) xor( "S" + i, p[i], gen[i - 1] );
+	not( "C" + n, gen[n - 1] );
+	not( "S" + n, "C" + n + " out" );
+    }
+
+    /** an array multiplier of n-bit inputs A and B giving 2n-bit
+     *  product bits; each row of partial products is added to the sum
+     *  of the rows before it with a ripple-carry adder
+     *  @param n the number of bits
+     */
+    void multiplier( int n ) {
+	String[] a = new String[n];
+	String[] b = new String[n];
+	for (int i = 0; i < n; i++) a[i] = gate( "A" + i, "const" );
+	for (int i = 0; i < n; i++) b[i] = gate( "B" + i, "const" );
+
+	String[] sum = new String[2 * n];
+	int width = n;
+	for (int i = 0; i < n; i++) sum[i] = and( "M" + i + "_0", a[i], b[0] );
+	for (int j = 1; j < n; j++) {
+	    String c = null;
+	    for (int i = 0; i < n; i++) {
+		int k = i + j;
+		String pp = and( "M" + i + "_" + j, a[i], b[j] );
+		if (k < width) {
+		    String[] s = add( "R" + j + "_" + k, sum[k], pp, c );
+		    sum[k] = s[0];
+		    c = s[1];
+		} else if (c != null) {
+		    String[] s = add( "R" + j + "_" + k, pp, c, null );
+		    sum[k] = s[0];
+		    c = s[1];
+		} else {
+		    sum[k] = pp;
+		}
+	    }
+	    width = n + j;
+	    if (c != null) sum[width++] = c;
+	}
+	for (int k = 0; k < width; k++) {
+	    not( "Q" + k, sum[k] );
+	    not( "P" + k, "Q" + k + " out" );
+	}
+    }
+
+    /** ring oscillators of not gates
+     *  @param rings the number of rings
+     *  @param length the number of gates in each, odd
+     */
+    void ring( long rings, int length ) {
+	for (long r = 0; r < rings; r++) {
+	    String first = gate( "R" + r + "_0", "not" );
+	    String prev = first;
+	    for (int i = 1; i < length; i++) prev = not( "R" + r + "_" + i, prev );
+	    wire( prev, "R" + r + "_0", "in" );
+	}
+    }
+
+    /** a chain of not gates fed by a const gate
+     *  @param length the number of not gates
+     */
+    void chain( long length ) {
+	String prev = gate( "IN", "const" );
+	for (long i = 0; i < length; i++) prev = not( "N" + i, prev );
+    }
+
+    /** @param args the command line
+     *  @param i the index of an option
+     *  @return the value following it
+     */
+    private static long option( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    return Long.parseLong( args[i + 1] );
+	} catch (NumberFormatException e) {
+	    Errors.fatal( "Number expected: " + args[i] + " " + args[i + 1] );
+	    return 0; // never reached, fatal never returns
+	}
+    }
+
+    /** @param args the command line
+     *  @param i the index of an option
+     *  @return the time value following it
+     */
+    private static float timeOption( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    float t = Float.parseFloat( args[i + 1] );
+	    if (t >= 0.0f) return t;
+	} catch (NumberFormatException e) {
+	    // fall through to the error below
+	}
+	Errors.fatal( "Time expected: " + args[i] + " " + args[i + 1] );
+	return 0.0f; // never reached, fatal never returns
+    }
+
+    /** Main program, see above for usage
+     */
+    public static void main( String[] args ) {
+	if (args.length < 1) Errors.fatal( "Missing family argument" );
+	String family = args[0];
+	long gates = 1000;
+	long inputs = 16;
+	long fanin = 2;
+	long fanout = 0;
+	long window = 1024;
+	long seed = 1;
+	long bits = -1;
+	long rings = 1;
+	long length = -1;
+	float delay = 1.0f;
+	float wireDelay = 0.1f;
+	String file = null;
+	boolean check = false;
+
+	for (int i = 1; i < args.length; i = i + 2) {
+	    String arg = args[i];
+	    if ("-gates".equals( arg )) {
+		gates = option( args, i );
+	    } else if ("-inputs".equals( arg )) {
+		inputs = option( args, i );
+	    } else if ("-fanin".equals( arg )) {
+		fanin = option( args, i );
+	    } else if ("-fanout".equals( arg )) {
+		fanout = option( args, i );
+	    } else if ("-window".equals( arg )) {
+		window = option( args, i );
+	    } else if ("-seed".equals( arg )) {
+		seed = option( args, i );
+	    } else if ("-bits".equals( arg )) {
+		bits = option( args, i );
+	    } else if ("-rings".equals( arg )) {
+		rings = option( args, i );
+	    } else if ("-length".equals( arg )) {
+		length = option( args, i );
+	    } else if ("-delay".equals( arg )) {
+		delay = timeOption( args, i );
+	    } else if ("-wire".equals( arg )) {
+		wireDelay = timeOption( args, i );
+	    } else if ("-o".equals( arg ) && (i + 1 < args.length)) {
+		file = args[i + 1];
+	    } else if ("-check".equals( arg )) {
+		check = true;
+		i = i - 1; // this option takes no value
+	    } else {
+		Errors.fatal( "Unknown option: " + arg );
+	    }
+	}
+	if ((fanin < 1) || (fanin > Integer.MAX_VALUE)) {
+	    Errors.fatal( "Fan-in must be at least 1" );
+	}
+	if ((inputs < 1) || (window < 1) || (window > Integer.MAX_VALUE)) {
+	    Errors.fatal( "Need at least one input and a window of one" );
+	}
+	if (check && (file == null)) {
+	    Errors.fatal( "-check needs -o file" );
+	}
+
+	try (Writer out = new BufferedWriter( (file == null)
+	    ? new OutputStreamWriter( System.out )
+	    : new FileWriter( file ), 1 << 20
+	)) {
+	    Generate gen = new Generate( out, delay, wireDelay );
+	    gen.line( "-- java Generate " + String.join( " ", args ) );
+	    if ("dag".equals( family )) {
+		gen.dag( gates, (int)inputs, (int)fanin, (int)fanout,
+		    (int)window, new Random( seed )
+		);
+	    } else if ("ripple".equals( family )) {
+		gen.ripple( (int)((bits < 0) ? 32 : bits) );
+	    } else if ("cla".equals( family )) {
+		gen.cla( (int)((bits < 0) ? 32 : bits) );
+	    } else if ("multiplier".equals( family )) {
+		gen.multiplier( (int)((bits < 0) ? 16 : bits) );
+	    } else if ("ring".equals( family )) {
+		if ((length >= 0) && ((length & 1) == 0)) {
+		    Errors.fatal( "Ring length must be odd" );
+		}
+		gen.ring( rings, (int)((length < 0) ? 5 : length) );
+	    } else if ("chain".equals( family )) {
+		gen.chain( (length < 0) ? 1000 : length );
+	    } else {
+		Errors.fatal( "Unknown family: " + family );
+	    }
+	    out.flush();
+	    System.err.println(
+		"-- " + gen.gates + " gates, " + gen.wires + " wires"
+	    );
+	} catch (IOException e) {
+	    Errors.fatal( "Can't write the circuit" );
+	}
+	if (check) check( file );
+    }
+
+    /** read a generated circuit back and fail if it has errors
+     *  @param file the file holding the circuit
+     */
+    private static void check( String file ) {
+	try {
+	    Logic.readCircuit( new Scanner( new File( file ) ) );
+	} catch (FileNotFoundException e) {
+	    Errors.fatal( "Can't read back the circuit: " + file );
+	}
+	Logic.sanityCheck();
+	if (Errors.count() > 0) {
+	    Errors.fatal( "Generated circuit does not read back: " + file );
+	}
+	System.err.println( "-- " + file + " reads back" );
+    }
+}
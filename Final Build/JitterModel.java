@@ -0,0 +1,197 @@
+/* JitterModel.java
+ * Configurable random variation of gate delays
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/** The jitter model decides the random part of each gate's delay.  A
+ *  gate with delay d and jitter percentage p changes its output after
+ *  base + span * x, where base = d * (1 - p/200), span = d * p/100, so
+ *  the delay is d give or take half of p percent, and x is a random
+ *  number drawn for the gate.  Base and span are computed once per gate,
+ *  by its constructor, so each output change costs one multiply-add.
+ *
+ *  x is uniform from 0 to 1, or normal with mean 1/2 and standard
+ *  deviation 1/6, cut off where the delay would be negative, or the
+ *  same normal truncated to 0 to 1 by drawing again.  The underlying
+ *  uniform numbers come from the global stream of PRNG, as they always
+ *  have, from a SplittableRandom with a given seed, which takes no locks,
+ *  or from each gate's own counter-based stream.  With none of this
+ *  configured, delays are exactly those of the original simulator: 10
+ *  percent uniform jitter from PRNG.
+ *  @see Gate
+ *  @see PRNG
+ *  @see CounterRNG
+ */
+public final class JitterModel {
+    // distributions of x
+    public static final int UNIFORM = 0;
+    public static final int NORMAL = 1;
+    public static final int TRUNCATED = 2;
+
+    /** distribution names, in the order of the distribution codes */
+    public static final String[] DISTRIBUTIONS
+	= { "uniform", "normal", "truncated" };
+
+    private static int distribution = UNIFORM;
+
+    // jitter percentages, by default and for individually named gates
+    private static float percent = 10.0f;
+    private static final Map <String,Float> percents
+	= new HashMap <String,Float> ();
+
+    // the source of uniform numbers, PRNG if fast is null and counters
+    // is false
+    private static SplittableRandom fast = null;
+    private static boolean counters = false;
+    private static long seed = 0;
+
+    private JitterModel() {}
+
+    /** go back to the defaults, so another simulation can start, as in
+     *  Batch
+     */
+    static void reset() {
+	distribution = UNIFORM;
+	percent = 10.0f;
+	percents.clear();
+	fast = null;
+	counters = false;
+	seed = 0;
+    }
+
+    /** draw uniform numbers from a SplittableRandom
+     *  @param s its seed
+     */
+    public static void useSeed( long s ) {
+	fast = new SplittableRandom( s );
+    }
+
+    /** draw uniform numbers from each gate's own counter-based stream,
+     *  so they don't depend on the order of draws by other gates
+     *  @param s the seed of the streams
+     */
+    public static void useCounters( long s ) {
+	counters = true;
+	seed = s;
+    }
+
+    /** set the distribution
+     *  @param name its name, one of DISTRIBUTIONS
+     *  @return false if there is no such distribution
+     */
+    public static boolean setDistribution( String name ) {
+	for (int i = 0; i < DISTRIBUTIONS.length; i++) {
+	    if (DISTRIBUTIONS[i].equals( name )) {
+		distribution = i;
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /** set a jitter percentage
+     *  @param spec either p, the percentage for all gates not named, or
+     *  name=p, the percentage for the named gate
+     *  @return false if spec is malformed or p is not from 0 to 200
+     */
+    public static boolean setPercent( String spec ) {
+	int eq = spec.lastIndexOf( '=' );
+	float p;
+	try {
+	    p = Float.parseFloat( spec.substring( eq + 1 ) );
+	} catch (NumberFormatException e) {
+	    return false;
+	}
+	if (!((p >= 0.0f) && (p <= 200.0f)) || (eq == 0)) return false;
+	if (eq < 0) {
+	    percent = p;
+	} else {
+	    percents.put( spec.substring( 0, eq ), p );
+	}
+	return true;
+    }
+
+    /** @return the names of gates given their own percentages */
+    public static Set <String> names() {
+	return percents.keySet();
+    }
+
+    /** @param name a gate's name
+     *  @return its jitter percentage
+     */
+    private static float percent( String name ) {
+	Float p = percents.get( name );
+	return (p == null) ? percent : p;
+    }
+
+    /** @param name a gate's name
+     *  @param delay its delay
+     *  @return the least delay of the gate
+     */
+    public static float base( String name, float delay ) {
+	return delay * (1.0f - (percent( name ) / 200.0f));
+    }
+
+    /** @param name a gate's name
+     *  @param delay its delay
+     *  @return the range of the gate's delays
+     */
+    public static float span( String name, float delay ) {
+	return delay * (percent( name ) / 100.0f);
+    }
+
+    /** draw a uniform number for a gate
+     *  @param g the gate
+     *  @return x where 0 <= x < 1
+     */
+    private static float uniform( Gate g ) {
+	if (counters) return CounterRNG.unit( seed, g.id, g.draws++ );
+	if (fast != null) return (fast.nextInt() >>> 8) * 0x1.0p-24f;
+	return PRNG.randomFloat( 1.0f );
+    }
+
+    /** @param g a gate
+     *  @return a normally distributed number, mean 0, deviation 1
+     */
+    private static float gaussian( Gate g ) {
+	double u = 1.0 - uniform( g );	// never zero
+	double v = uniform( g );
+	return (float)(Math.sqrt( -2.0 * Math.log( u ) ) * Math.cos( 2 * Math.PI * v ));
+    }
+
+    /** draw x for a gate's next output change, or take it from the log
+     *  being replayed, and add it to the log being recorded
+     *  @param g the gate
+     *  @return x, to be multiplied by the gate's span
+     */
+    public static float next( Gate g ) {
+	if (EventLog.replaying()) return EventLog.readDraw();
+	float x = draw( g );
+	if (EventLog.recording()) EventLog.writeDraw( x );
+	return x;
+    }
+
+    /** @param g a gate
+     *  @return x drawn from the distribution
+     */
+    private static float draw( Gate g ) {
+	switch (distribution) {
+	case NORMAL:
+	    float x = 0.5f + gaussian( g ) / 6.0f;
+	    return (g.span > 0.0f) ? Math.max( x, -g.base / g.span ) : x;
+	case TRUNCATED:
+	    for (;;) {
+		float y = 0.5f + gaussian( g ) / 6.0f;
+		if ((y >= 0.0f) && (y < 1.0f)) return y;
+	    }
+	default:
+	    return uniform( g );
+	}
+    }
+}
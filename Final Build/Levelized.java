@@ -0,0 +1,65 @@
+/* Levelized.java
+ * Levelization of a combinational netlist for cycle-based simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** The gates of a netlist sorted by level, where input gates are at
+ *  level zero and every other gate is one level above the highest of
+ *  the gates feeding it.  Evaluating the levels in ascending order
+ *  settles the whole circuit in one pass.
+ *  @see Netlist
+ *  @see CycleSimulator
+ */
+public final class Levelized {
+    // exception thrown when the netlist has feedback loops
+    public static class Cyclic extends Exception {
+	private static final long serialVersionUID = 1L;
+    }
+
+    public final Netlist net;
+
+    public final int[] level;		// the level of each gate
+    public final int levels;		// the number of levels
+
+    // the gates of level l are order[levelStart[l]..levelStart[l+1]-1]
+    public final int[] order;
+    public final int[] levelStart;
+
+    public final int[] inputs;		// input gates, from the netlist
+    public final int[] outputs;		// output gates, from the netlist
+
+    /** levelize a netlist
+     *  @param net the netlist
+     *  @throws Cyclic if the netlist contains feedback loops
+     */
+    public Levelized( Netlist net ) throws Cyclic {
+	this.net = net;
+	int[] topo = net.topologicalOrder();
+	if (topo == null) throw new Cyclic();
+
+	level = new int[net.gateCount];
+	int top = 0;
+	for (int g: topo) {
+	    int l = 0;
+	    for (int i = net.faninStart[g]; i < net.faninStart[g + 1]; i++) {
+		int lit = net.fanin[i];
+		if (lit != Netlist.NONE) l = Math.max( l, level[lit >> 1] + 1 );
+	    }
+	    level[g] = l;
+	    top = Math.max( top, l );
+	}
+	levels = (net.gateCount == 0) ? 0 : top + 1;
+
+	// counting sort of the gates by level
+	levelStart = new int[levels + 1];
+	for (int g = 0; g < net.gateCount; g++) levelStart[level[g] + 1]++;
+	for (int l = 0; l < levels; l++) levelStart[l + 1] += levelStart[l];
+	order = new int[net.gateCount];
+	int[] fill = java.util.Arrays.copyOf( levelStart, levels );
+	for (int g = 0; g < net.gateCount; g++) order[fill[level[g]]++] = g;
+
+	inputs = net.inputs;
+	outputs = net.outputs;
+    }
+}
@@ -7,7 +7,10 @@
  * Bug notices in the code indicate unsolved problems
  */
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Scanner;
@@ -31,34 +34,84 @@ public class Logic {
     private static LinkedList <Gate> gates
 	= new LinkedList <Gate> ();
 
+    // the gates by name, so large circuits read in linear time
+    private static HashMap <String,Gate> gateNames
+	= new HashMap <String,Gate> ();
+
     /** Find a gate by textual name in the set gates
      *  @param s name of a gate
      *  @return the gate named s or null if none
      */
     public static Gate findGate( String s ) {
-	// quick and dirty implementation
-	for (Gate i: gates) {
-	    if (i.name.equals( s )) {
-		return i;
-	    }
-	}
-	return null;
+	return gateNames.get( s );
+    }
+
+    /** Forget the circuit, so another can be read, as by Bench
+     */
+    static void clear() {
+	gates.clear();
+	gateNames.clear();
+	wires.clear();
+    }
+
+    /** Forget the circuit, the options and everything the simulators
+     *  keep between runs, so another simulation can start in the same
+     *  classes; public, since Batch calls it from another class loader
+     */
+    public static void reset() {
+	clear();
+	cycle = false;
+	compile = false;
+	vectorFile = null;
+	exhaustive = false;
+	randomVectors = 0;
+	lanes = 0;
+	simd = false;
+	fourState = false;
+	faults = false;
+	endTime = Float.POSITIVE_INFINITY;
+	progress = 0.0f;
+	profileTop = 0;
+	netlist = false;
+	threads = 1;
+	optimistic = false;
+	synchronous = false;
+	partitionStats = false;
+	seed = 5;
+	recordFile = null;
+	replayFile = null;
+	until = Long.MAX_VALUE;
+	monteCarloRuns = 0;
+
+	Gate.fourState = false;
+	Errors.reset();
+	Simulator.clear();
+	PRNG.reset();
+	JitterModel.reset();
+	EventLog.close();
+	ActivityProfile.reset();
+	Footprint.reset();
     }
 
     /** Initialize this logic circuit by scanning its description
      */ 
-    private static void readCircuit( Scanner sc ) {
+    static void readCircuit( Scanner sc ) {
 	while (sc.hasNext()) {
 	    String command = sc.next();
 	    if ("gate".equals( command )) {
 		try {
-		    gates.add( Gate.factory( sc ) );
+		    Gate g = Gate.factory( sc );
+		    g.id = gates.size();
+		    gates.add( g );
+		    gateNames.put( g.name, g );
 		} catch (Gate.ConstructorFailure e) {
 		    // do nothing, the constructor already reported the error 
 		}
 	    } else if ("wire".equals( command )) {
 		try {
-		    wires.add( new Wire( sc ) );
+		    Wire w = new Wire( sc );
+		    w.id = wires.size();
+		    wires.add( w );
 		} catch (Wire.ConstructorFailure e) {
 		    // do nothing, the constructor already reported the error 
 		}
@@ -73,11 +126,166 @@ public class Logic {
 
     /** Check that a circuit is properly constructed
      */
-    private static void sanityCheck() {
+    static void sanityCheck() {
 	for (Gate i: gates) i.checkSanity();
 	// Bug: Are there any sensible sanity checks on wires?
     }
 
+    /** Build the compact indexed form of the circuit
+     *  @return a netlist of all the gates and wires
+     *  @see Netlist
+     */
+    static Netlist netlist() {
+	return new Netlist( gates, wires );
+    }
+
+    /** Simulate the circuit with no delays, one cycle per input vector
+     *  @see CycleSimulator
+     *  @see BitSimulator
+     *  @see CircuitCompiler
+     *  @see FaultSimulator
+     */
+    private static void simulateCycles() {
+	Netlist net = netlist();
+	if (fourState) {
+	    simulateFourState( net );
+	    return;
+	}
+
+	final Levelized lev;
+	try {
+	    lev = new Levelized( net );
+	} catch (Levelized.Cyclic e) {
+	    Errors.warn( "Circuit has feedback loops, can't simulate cycles" );
+	    return;
+	}
+	final int inputs = lev.inputs.length;
+
+	CompiledCircuit c = null;
+	if (compile) try {
+	    c = CircuitCompiler.compile( net );
+	} catch (CircuitCompiler.Failure e) {
+	    Errors.warn( "Can't compile circuit, " + e.getMessage() );
+	}
+
+	Iterable <boolean[]> vectors;
+	if (vectorFile != null) try {
+	    vectors = Vectors.read(
+		new Scanner( new File( vectorFile ) ), inputs
+	    );
+	} catch (FileNotFoundException e) {
+	    Errors.warn( "Can't open the vector file" );
+	    return;
+	} else if (randomVectors > 0) {
+	    vectors = Vectors.random( inputs, randomVectors );
+	} else if (exhaustive) {
+	    if (inputs > 62) {
+		Errors.warn( "Too many inputs to try every vector: " + inputs );
+		return;
+	    }
+	    vectors = Vectors.exhaustive( inputs );
+	} else {
+	    vectors = Vectors.allTrue( inputs );
+	}
+
+	if (faults) {
+	    new FaultSimulator( lev ).run( vectors );
+	} else if ((lanes > 0) || simd) {
+	    new BitSimulator( lev, Math.max( lanes, 1 ), simd ).run( vectors );
+	} else {
+	    new CycleSimulator( lev, c ).run( vectors );
+	}
+    }
+
+    /** Simulate the circuit with no delays, one cycle per input vector,
+     *  with unknown and undriven values, even if it has feedback loops
+     *  @param net the circuit
+     *  @see FourStateSimulator
+     */
+    private static void simulateFourState( Netlist net ) {
+	final int inputs = net.inputs.length;
+	Iterable <byte[]> vectors;
+	if (vectorFile != null) try {
+	    vectors = Vectors.readFourState(
+		new Scanner( new File( vectorFile ) ), inputs
+	    );
+	} catch (FileNotFoundException e) {
+	    Errors.warn( "Can't open the vector file" );
+	    return;
+	} else if (randomVectors > 0) {
+	    vectors = Vectors.fourState( Vectors.random( inputs, randomVectors ) );
+	} else if (exhaustive && (inputs <= 62)) {
+	    vectors = Vectors.fourState( Vectors.exhaustive( inputs ) );
+	} else if (exhaustive) {
+	    Errors.warn( "Too many inputs to try every vector: " + inputs );
+	    return;
+	} else {
+	    vectors = Vectors.fourState( Vectors.allTrue( inputs ) );
+	}
+
+	new FourStateSimulator( net, Math.max( lanes, 1 ) ).run( vectors );
+    }
+
+    /** Simulate the circuit with timing, using the netlist engines,
+     *  sequentially or with one thread per partition
+     *  @see LogicalProcess
+     *  @see ConservativeSimulator
+     *  @see TimeWarpSimulator
+     *  @see SynchronousSimulator
+     *  @see Partitioner
+     */
+    private static void simulateNetlist() {
+	Netlist net = netlist();
+	if (monteCarloRuns > 0) {
+	    simulateMonteCarlo( net );
+	    return;
+	} else if (synchronous) {
+	    new SynchronousSimulator( net, seed, endTime, threads ).run();
+	    return;
+	}
+	if (threads > 1) try {
+	    long[] activity = Partitioner.activity( net, seed, endTime );
+	    int[] part = Partitioner.partition( net, threads, activity );
+	    if (partitionStats) {
+		System.err.println(
+		    "-- " + Partitioner.stats( net, part, threads, activity )
+		);
+	    }
+	    if (optimistic) {
+		new TimeWarpSimulator( net, part, seed, endTime ).run();
+	    } else {
+		new ConservativeSimulator( net, part, seed, endTime ).run();
+	    }
+	    return;
+	} catch (ConservativeSimulator.Failure e) {
+	    Errors.warn( "Can't simulate in parallel, " + e.getMessage() );
+	}
+	LogicalProcess lp = new LogicalProcess(
+	    net, new GateState( net, seed ), 0, null, endTime
+	);
+	lp.initialize();
+	lp.run();
+    }
+
+    /** Simulate the circuit with timing many times, with consecutive
+     *  seeds, and print statistics of when each gate settles
+     *  @param net the circuit
+     *  @see MonteCarlo
+     */
+    private static void simulateMonteCarlo( Netlist net ) {
+	int workers = (threads > 1)
+	    ? threads : Runtime.getRuntime().availableProcessors();
+	MonteCarlo mc;
+	try {
+	    mc = new MonteCarlo( net, endTime );
+	} catch (IllegalArgumentException e) {
+	    Errors.warn( "Can't analyze timing, " + e.getMessage() );
+	    return;
+	}
+	mc.run( seed, monteCarloRuns, workers );
+	mc.print();
+    }
+
     /** Print out the wire network to system.out
      */ 
     private static void printCircuit() {
@@ -89,20 +297,310 @@ public class Logic {
 	}
     }
 
+    // command line options
+    private static boolean cycle = false;	// simulate with no delays
+    private static boolean compile = false;	// generate an evaluator
+    private static String vectorFile = null;	// input vectors to read
+    private static boolean exhaustive = false;	// try all input vectors
+    private static long randomVectors = 0;	// random input vectors to try
+    private static int lanes = 0;		// words per bit-parallel signal
+    private static boolean simd = false;	// use VectorKernel
+    private static boolean fourState = false;	// with X and Z values
+    private static boolean faults = false;	// grade vectors by faults found
+    private static float endTime = Float.POSITIVE_INFINITY; // when to stop
+    private static float progress = 0.0f;	// seconds between reports
+    private static long profileTop = 0;		// gates to profile
+    private static boolean netlist = false;	// use the netlist engines
+    private static int threads = 1;		// threads for netlist engines
+    private static boolean optimistic = false;	// use Time Warp
+    private static boolean synchronous = false;	// parallel time steps
+    private static boolean partitionStats = false; // report the partition
+    private static long seed = 5;		// seed for netlist engines
+    private static String recordFile = null;	// the replay log to record
+    private static String replayFile = null;	// the replay log to replay
+    private static long until = Long.MAX_VALUE;	// events to simulate
+    private static long monteCarloRuns = 0;	// runs for timing statistics
+
+    /** get the numeric value of a command line option
+     *  @param args the command line
+     *  @param i the index of the option in args
+     *  @return the value, from the argument following the option
+     */
+    private static long numericOption( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    long n = Long.parseLong( args[i + 1] );
+	    if (n > 0) return n;
+	} catch (NumberFormatException e) {
+	    // fall through to the error report
+	}
+	Errors.fatal( "Positive number expected: " + args[i] + " " + args[i + 1] );
+	return 0; // never reached, fatal never returns
+    }
+
+    /** get the seed given as a command line option
+     *  @param args the command line
+     *  @param i the index of the option in args
+     *  @return the seed, any long, from the argument following the option
+     */
+    private static long seedOption( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    return Long.parseLong( args[i + 1] );
+	} catch (NumberFormatException e) {
+	    Errors.fatal( "Seed expected: " + args[i] + " " + args[i + 1] );
+	}
+	return 0; // never reached, fatal never returns
+    }
+
+    /** get the time value of a command line option
+     *  @param args the command line
+     *  @param i the index of the option in args
+     *  @return the value, from the argument following the option
+     */
+    private static float timeOption( String[] args, int i ) {
+	if (i + 1 >= args.length) Errors.fatal( "Missing value: " + args[i] );
+	try {
+	    float t = Float.parseFloat( args[i + 1] );
+	    if (t >= 0.0f) return t;
+	} catch (NumberFormatException e) {
+	    // fall through to the error report
+	}
+	Errors.fatal( "Time expected: " + args[i] + " " + args[i + 1] );
+	return 0.0f; // never reached, fatal never returns
+    }
+
+    // the options of main that take a value
+    private static final List <String> VALUED = Arrays.asList(
+	"-bits", "-vectors", "-end", "-profile", "-progress", "-counter",
+	"-record", "-replay", "-until", "-delayseed", "-jitter",
+	"-distribution", "-seed", "-threads", "-montecarlo", "-random",
+	"-batch"
+    );
+
+    /** find the netlist file on a command line the way main does
+     *  @param args the command line
+     *  @return the one argument that is neither an option nor an
+     *  option's value, or null if there is none or more than one
+     */
+    static String fileName( String[] args ) {
+	String fileName = null;
+	for (int i = 0; i < args.length; i++) {
+	    if (VALUED.contains( args[i] )) {
+		i = i + 1;
+	    } else if (!args[i].startsWith( "-" )) {
+		if (fileName != null) return null;
+		fileName = args[i];
+	    }
+	}
+	return fileName;
+    }
+
     /** Main program
+     *  usage: java Logic [options] file
+     *  -cycle simulates with no delays, one cycle per input vector
+     *  -compile does the same using a circuit specific evaluator
+     *  -bits n does the same 64*n vectors at a time, in parallel
+     *  -simd does the same with the SIMD kernel, see VectorKernel
+     *  -vectors vfile reads the input vectors for cycle simulation
+     *  -exhaustive tries every possible input vector
+     *  -random n tries n random input vectors
+     *  -4state simulates with unknown (x) and undriven (z) values; with
+     *  timing, every gate starts out unknown instead of false
+     *  -faults reports the stuck-at faults the vectors detect
+     *  -end t stops timed simulation at time t
+     *  -profile n counts the activity of each gate and wire, and
+     *  reports the n gates that cause the most events, see ActivityProfile
+     *  -footprint estimates the memory taken by gates and wires after
+     *  loading, and by pending events at their most, see Footprint
+     *  -progress s reports the progress of timed simulation every s
+     *  seconds on stderr, see SimMetrics
+     *  -counter s gives each gate its own random delays, seeded by s
+     *  -record lfile records the order of events and random delays
+     *  -replay lfile repeats the run recorded in lfile, see EventLog
+     *  -until n stops timed simulation after n events
+     *  -delayseed s draws random delays from a fast generator seeded by s
+     *  -jitter p varies gate delays by p percent, 10 by default, and
+     *  -jitter name=p varies the named gate's delay by p percent
+     *  -distribution d draws delays uniform, normal or truncated normal
+     *  -seed s does the same using the netlist engines
+     *  -threads n does the same with n partitions, one thread each
+     *  -optimistic does the same with optimistic parallel simulation
+     *  -synchronous does the same simulating each time step's events
+     *  in parallel on n threads, instead of partitioning
+     *  -partstats reports the partition used for parallel simulation
+     *  -montecarlo n simulates n times, seeds s to s+n-1, and prints
+     *  statistics of when each gate settles instead of the changes
+     *  -batch mfile runs each line of mfile as a separate command line,
+     *  adding the other options given, see Batch
      */ 
     public static void main( String[] args ) {
-	if (args.length < 1) {
+	String fileName = null;
+
+	for (String arg: args) if ("-batch".equals( arg )) {
+	    Batch.run( args );
+	    return;
+	}
+
+	for (int i = 0; i < args.length; i++) {
+	    String arg = args[i];
+	    if ("-cycle".equals( arg )) {
+		cycle = true;
+	    } else if ("-compile".equals( arg )) {
+		cycle = true;
+		compile = true;
+	    } else if ("-bits".equals( arg )) {
+		cycle = true;
+		lanes = (int)numericOption( args, i );
+		i = i + 1;
+	    } else if ("-simd".equals( arg )) {
+		cycle = true;
+		simd = true;
+	    } else if ("-vectors".equals( arg ) && (i + 1 < args.length)) {
+		cycle = true;
+		i = i + 1;
+		vectorFile = args[i];
+	    } else if ("-faults".equals( arg )) {
+		cycle = true;
+		faults = true;
+	    } else if ("-4state".equals( arg )) {
+		fourState = true;
+	    } else if ("-end".equals( arg )) {
+		endTime = timeOption( args, i );
+		i = i + 1;
+	    } else if ("-footprint".equals( arg )) {
+		Footprint.on = true;
+	    } else if ("-profile".equals( arg )) {
+		profileTop = numericOption( args, i );
+		i = i + 1;
+	    } else if ("-progress".equals( arg )) {
+		progress = timeOption( args, i );
+		i = i + 1;
+	    } else if ("-counter".equals( arg )) {
+		JitterModel.useCounters( seedOption( args, i ) );
+		i = i + 1;
+	    } else if ("-record".equals( arg ) && (i + 1 < args.length)) {
+		i = i + 1;
+		recordFile = args[i];
+	    } else if ("-replay".equals( arg ) && (i + 1 < args.length)) {
+		i = i + 1;
+		replayFile = args[i];
+	    } else if ("-until".equals( arg )) {
+		until = numericOption( args, i );
+		i = i + 1;
+	    } else if ("-delayseed".equals( arg )) {
+		JitterModel.useSeed( seedOption( args, i ) );
+		i = i + 1;
+	    } else if ("-jitter".equals( arg ) && (i + 1 < args.length)) {
+		i = i + 1;
+		if (!JitterModel.setPercent( args[i] )) {
+		    Errors.fatal( "Jitter percentage expected: -jitter " + args[i] );
+		}
+	    } else if ("-distribution".equals( arg ) && (i + 1 < args.length)) {
+		i = i + 1;
+		if (!JitterModel.setDistribution( args[i] )) {
+		    Errors.fatal( "Unknown distribution: " + args[i] );
+		}
+	    } else if ("-seed".equals( arg )) {
+		netlist = true;
+		seed = seedOption( args, i );
+		i = i + 1;
+	    } else if ("-threads".equals( arg )) {
+		netlist = true;
+		threads = (int)numericOption( args, i );
+		i = i + 1;
+	    } else if ("-optimistic".equals( arg )) {
+		netlist = true;
+		optimistic = true;
+	    } else if ("-synchronous".equals( arg )) {
+		netlist = true;
+		synchronous = true;
+	    } else if ("-montecarlo".equals( arg )) {
+		netlist = true;
+		monteCarloRuns = numericOption( args, i );
+		i = i + 1;
+	    } else if ("-partstats".equals( arg )) {
+		partitionStats = true;
+	    } else if ("-exhaustive".equals( arg )) {
+		cycle = true;
+		exhaustive = true;
+	    } else if ("-random".equals( arg )) {
+		cycle = true;
+		randomVectors = numericOption( args, i );
+		i = i + 1;
+	    } else if (arg.startsWith( "-" )) {
+		Errors.fatal( "Unknown option: " + arg );
+	    } else if (fileName != null) {
+		Errors.fatal( "Too many arguments" );
+	    } else {
+		fileName = arg;
+	    }
+	}
+	if (fileName == null) {
 	    Errors.fatal( "Missing file name argument" );
-	} else if (args.length > 1) {
-	    Errors.fatal( "Too many arguments" );
+	} else if (fourState && netlist && !cycle) {
+	    Errors.fatal( "Can't simulate unknown values with the netlist engines" );
+	} else if ((recordFile != null) && (replayFile != null)) {
+	    Errors.fatal( "Can't both record and replay" );
+	} else if (((recordFile != null) || (replayFile != null))
+	    && (cycle || netlist)
+	) {
+	    Errors.fatal( "Can't record or replay without the event simulator" );
 	} else try {
-	    readCircuit( new Scanner( new File( args[0] ) ) );
+	    // gates start out unknown or false as they are read
+	    Gate.fourState = fourState && !cycle;
+
+	    // events are scheduled as the circuit is read, so open the log
+	    // first, but only once the circuit can be read
+	    Scanner sc = new Scanner( new File( fileName ) );
+	    if (recordFile != null) {
+		EventLog.record( recordFile );
+	    } else if (replayFile != null) {
+		EventLog.replay( replayFile );
+	    }
+	    // each phase is a flight recorder event, see FlightEvents
+	    FlightEvents.Phase phase = FlightEvents.phase( "parse", fileName );
+	    readCircuit( sc );
+	    for (String name: JitterModel.names()) {
+		if (findGate( name ) == null) {
+		    Errors.warn( "-jitter names an unknown gate: " + name );
+		}
+	    }
+	    phase.commit();
+	    phase = FlightEvents.phase( "sanity check", fileName );
 	    sanityCheck();
-	    if (Errors.count() == 0) Simulator.run();
+	    phase.commit();
+	    if (Footprint.on) Footprint.reportLoad( gates, wires, gateNames );
+	    if (Errors.count() == 0) {
+		phase = FlightEvents.phase( "simulate", fileName );
+		if (cycle) {
+		    simulateCycles();
+		} else try {
+		    SimMetrics.start( fileName, progress );
+		    if (netlist) {
+			simulateNetlist();
+		    } else if (profileTop > 0) {
+			ActivityProfile.start( gates.size(), wires.size() );
+			Simulator.run( endTime, until );
+			ActivityProfile.report( gates, wires, (int)profileTop );
+		    } else {
+			Simulator.run( endTime, until );
+		    }
+		    if (Footprint.on && !netlist) Footprint.reportQueue();
+		} finally {
+		    SimMetrics.stop();
+		}
+		phase.commit();
+		phase = FlightEvents.phase( "flush", fileName );
+		System.out.flush();
+		phase.commit();
+	    }
 	    // note that writeCircuit is no longer called anywhere
 	} catch (FileNotFoundException e) {
 	    Errors.fatal( "Can't open the file" );
+	} finally {
+	    // Simulator.run closes it too, but not every run gets there
+	    EventLog.close();
 	}
     }
 }
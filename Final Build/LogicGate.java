@@ -0,0 +1,90 @@
+/* LogicGate.java
+ * The common base of gates with one output
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.LinkedList;
+
+/** Gathers all of the properties common to single-output gates
+ *  Specifically, all LogicGates drive a single list of output wires
+ *  with a single output value when an OutputChangeEvent occurs.
+ *  @see Wire
+ *  @see Gate
+ */
+abstract class LogicGate extends Gate {
+    // set of all wires out of this gate
+    private LinkedList <Wire> outgoing = new LinkedList <Wire> ();
+
+    // this gate's value, computed by input change events
+
+    protected int value = initial();
+
+    /** a gate's most recent actual output value */
+    private int outValue = initial();
+
+    /** The constructor used only from subclasses of LogicGate
+     *  @param name used to initialize the final field
+     *  @param delay used to initialize the final field
+     *  @see NotGate
+     */
+    LogicGate( String name, float delay ) {
+	super( name, delay );
+    }
+
+    /** tell the gate that one of its output pins is in use
+     *  @param w the wire that is connected
+     *  @param pinName the name of the pin to be set
+     *  @return corresponding pin number
+     */
+    public final int registerOutput( Wire w, String pinName ) {
+	if ("out".equals( pinName )) {
+	    outgoing.add( w );
+	    return 0;
+	} else {
+	    Errors.warn( "Illegal output pin: " + name + " " + pinName );
+	    return -1;
+	}
+    }
+
+    /** get the name of the output pin, given its number,
+     *  if the pin number is correct
+     *  @param pinNumber the output pin number
+     *  @return pinName the name of the output pin
+     */
+    public final String outPinName( int pinNumber ) {
+	if (pinNumber == 0) return "out";
+	return "???";
+    }
+
+    // Simulation methods
+
+    /** Simulate an output change on this wire
+     *  Passes the new value to the input of the gate to which this wire goes.
+     *  Uses the this.value field to determine the new output value.
+     *  Output change events are scheduled (directly or indirectly) by the
+     *  input change event of the actual gate object. So called micro events,
+     *  changes where a gate's output would change from true to true, are
+     *  suppressed by a low pass filter
+     *  @param time tells when this wire's input changes
+     *  @see inputChangeEvent
+     *  @see Wire
+     */
+    protected final void outputChangeEvent( float time ) {
+	if (value != outValue) { // only if the output actually changes
+	    outValue = value;
+	    if (ActivityProfile.on) ActivityProfile.changed( this );
+	    System.out.println(
+		"At " + time + " " + toString() +
+		" out " + " changes to " + name( value )
+	    );
+	    for (Wire w: outgoing) {
+		w.inputChangeEvent( time, value );
+	    }
+	} else {
+	    Simulator.metrics.suppress();
+	}
+    }
+
+} // abstract class LogicGate
+
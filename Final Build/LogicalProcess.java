@@ -0,0 +1,239 @@
+/* LogicalProcess.java
+ * Event-driven timed simulation of all or part of a netlist
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.PriorityQueue;
+
+/** A logical process simulates the gates of one partition of a netlist
+ *  with the same semantics as the Gate classes and Simulator: an input
+ *  change reevaluates the gate and, if its value changes, schedules an
+ *  output change after the gate's delay with up to 10 percent jitter;
+ *  an output change that really changes the output is printed and
+ *  passed down each outgoing wire after the wire's delay.
+ *
+ *  Random jitter comes from a separate counter-based stream for each
+ *  gate, so the results don't depend on the order in which different
+ *  gates are simulated.  By itself, a logical process owning every gate is a
+ *  sequential simulator; parallel engines run several, one per
+ *  partition, and pass the events crossing partitions between them.
+ *  @see NetEvent
+ *  @see ConservativeSimulator
+ */
+class LogicalProcess {
+    final Netlist net;
+    final GateState state;
+    final int id;		// the partition number of this process
+    final int[] part;		// the partition of each gate, null if one
+    final float endTime;	// events after this are not simulated
+
+    final PriorityQueue <NetEvent> queue = new PriorityQueue <NetEvent> ();
+
+    // what this process is doing, see SimMetrics
+    SimMetrics.Counter metrics = new SimMetrics.Counter( true );
+
+    /** Construct a logical process
+     *  @param net the circuit
+     *  @param state the shared state of its gates
+     *  @param id the partition simulated by this process
+     *  @param part the partition of each gate, or null if this process
+     *  simulates the whole circuit
+     *  @param endTime the time when simulation stops
+     */
+    LogicalProcess(
+	Netlist net, GateState state, int id, int[] part, float endTime
+    ) {
+	this.net = net;
+	this.state = state;
+	this.id = id;
+	this.part = part;
+	this.endTime = endTime;
+    }
+
+    /** @param g a gate
+     *  @return true if this process simulates g
+     */
+    final boolean owns( int g ) {
+	return (part == null) || (part[g] == id);
+    }
+
+    /** schedule the events that start the simulation, const gates
+     *  fire, and gates whose value with all inputs false is true, such
+     *  as not gates, change their outputs, all after their own delays,
+     *  and clock gates rise for the first time
+     */
+    void initialize() {
+	for (int g = 0; g < net.gateCount; g++) {
+	    if (!owns( g )) continue;
+	    if (net.kind[g] == Netlist.CONST) {
+		schedule( new NetEvent(
+		    net.delay[g], NetEvent.OUTPUT, g, 0, true, 0
+		) );
+	    } else if (net.kind[g] == Netlist.CLOCK) {
+		schedule( new NetEvent(
+		    net.edgeTime( g, 0 ), NetEvent.OUTPUT, g, 0, true, 0
+		) );
+	    } else if (evaluate( g )) {
+		state.value[g] = true;
+		schedule( new NetEvent(
+		    net.delay[g], NetEvent.OUTPUT, g, 0, true, 0
+		) );
+	    }
+	}
+    }
+
+    /** simulate until no events remain, for sequential simulation
+     */
+    void run() {
+	while (!queue.isEmpty()) process( queue.poll() );
+	metrics.flush();
+    }
+
+    /** simulate one event
+     *  @param e the event
+     */
+    void process( NetEvent e ) {
+	final int g = e.gate;
+	if (e.type == NetEvent.INPUT) {
+	    int i = net.faninStart[g] + e.slot;
+	    if (state.pin[i] != e.value) state.ones[g] += e.value ? 1 : -1;
+	    state.pin[i] = e.value;
+	    if (net.kind[g] == Netlist.NOT) {
+		// like NotGate, schedule even if the value doesn't change
+		state.value[g] = !e.value;
+		scheduleOutput( e, g );
+	    } else {
+		boolean v = evaluate( g );
+		if (v != state.value[g]) {
+		    state.value[g] = v;
+		    scheduleOutput( e, g );
+		}
+	    }
+	} else if (net.kind[g] == Netlist.CONST) {
+	    transition( e, true );
+	    for (int i = net.fanoutStart[g]; i < net.fanoutStart[g + 1]; i++) {
+		int w = net.fanout[i];
+		if (net.wireSrcPin[w] == 1) deliver( e, w, true );
+	    }
+	} else if (net.kind[g] == Netlist.CLOCK) {
+	    // the slot of a clock edge is its number, see ClockGate
+	    boolean v = e.value;
+	    state.value[g] = v;
+	    state.outValue[g] = v;
+	    transition( e, v );
+	    for (int i = net.fanoutStart[g]; i < net.fanoutStart[g + 1]; i++) {
+		deliver( e, net.fanout[i], v );
+	    }
+	    schedule( e.cause(
+		net.edgeTime( g, e.slot + 1 ), NetEvent.OUTPUT, g, e.slot + 1, !v
+	    ) );
+	} else {
+	    boolean v = state.value[g];
+	    if (v != state.outValue[g]) {
+		state.outValue[g] = v;
+		transition( e, v );
+		for (int i = net.fanoutStart[g]; i < net.fanoutStart[g + 1]; i++) {
+		    deliver( e, net.fanout[i], v );
+		}
+	    } else {
+		metrics.suppress();
+	    }
+	}
+	metrics.event( e.time, queue.size() );
+    }
+
+    /** compute a gate's value from its input pins, or for gates too
+     *  wide for a truth table, from the count of true pins
+     *  @param g the gate
+     *  @return the value
+     */
+    final boolean evaluate( int g ) {
+	int first = net.faninStart[g];
+	int last = net.faninStart[g + 1];
+	if (last - first > LutGate.MAX_INPUTS) {
+	    return Netlist.count( net.kind[g], state.ones[g], last - first );
+	}
+	int index = 0;
+	for (int i = first; i < last; i++) {
+	    if (state.pin[i]) index |= 1 << (i - first);
+	}
+	return ((net.table[g] >>> index) & 1) != 0;
+    }
+
+    /** schedule a gate's output change after its delay and jitter
+     *  @param cause the input change
+     *  @param g the gate
+     */
+    final void scheduleOutput( NetEvent cause, int g ) {
+	float d = net.delay[g];
+	schedule( cause.cause(
+	    cause.time + (d * 0.95f) + (jitter( g ) * (d * 0.1f)),
+	    NetEvent.OUTPUT, g, 0, false
+	) );
+    }
+
+    /** draw the next random number for a gate from its own stream
+     *  @param g the gate
+     *  @return x where 0 <= x < 1
+     */
+    float jitter( int g ) {
+	return CounterRNG.unit( state.seed, g, state.draws[g]++ );
+    }
+
+    /** pass a value down a wire
+     *  @param cause the output change that puts the value on the wire
+     *  @param w the wire
+     *  @param v the value
+     */
+    final void deliver( NetEvent cause, int w, boolean v ) {
+	int slot = net.wireDstSlot[w];
+	if (slot < 0) return;
+	int dst = net.wireDst[w];
+	NetEvent e = cause.cause(
+	    cause.time + net.wireDelay[w], NetEvent.INPUT, dst, slot, v
+	);
+	if (owns( dst )) {
+	    schedule( e );
+	} else {
+	    send( e, part[dst] );
+	}
+    }
+
+    /** schedule one new event for a gate of this process
+     *  @param e the event
+     */
+    void schedule( NetEvent e ) {
+	if (e.time <= endTime) queue.add( e );
+    }
+
+    /** send an event to a gate of another process; only parallel
+     *  engines have other processes
+     *  @param e the event
+     *  @param dst the partition of the gate
+     */
+    void send( NetEvent e, int dst ) {
+	throw new IllegalStateException( "no partition " + dst );
+    }
+
+    /** report that a gate's output changed, in the same form as the
+     *  Gate classes, other engines may collect these instead
+     *  @param e the output change event
+     *  @param v the new value
+     */
+    void transition( NetEvent e, boolean v ) {
+	System.out.println( describe( e.time, e.gate, v ) );
+    }
+
+    /** @param time the time of a change
+     *  @param g the gate that changes
+     *  @param v the new value
+     *  @return the report of the change, as printed by the Gate classes
+     */
+    final String describe( float time, int g, boolean v ) {
+	if (net.kind[g] == Netlist.CONST) {
+	    return "At " + time + " " + net.text[g] + " true  changes to true";
+	}
+	return "At " + time + " " + net.text[g] + " out  changes to " + v;
+    }
+}
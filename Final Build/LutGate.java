@@ -0,0 +1,181 @@
+/* LutGate.java
+ * Gates that look up their output in a truth table
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Handles the properties specific to lut gates, which compute any
+ *  function of up to six inputs by looking up the output in a truth
+ *  table, indexed by the input values packed into the bits of an int.
+ *  A single input lut gate has one pin, in, others have pins in1 to ink.
+ *  @see LogicGate
+ */
+final class LutGate extends LogicGate {
+    /** the largest number of inputs, so the table fits in a long */
+    public static final int MAX_INPUTS = 6;
+
+    private final int inputs;		// the number of input pins
+    private final long table;		// the truth table
+
+    // usage records for inputs, bit n set when pin n is used
+    private int used = 0;
+
+    // the input values in two planes, bit n of one is set if pin n can
+    // be 1, and bit n of zero if it can be 0
+    private int one;
+    private int zero;
+
+    /** The constructor used only from within class Gate
+     *  @param name used to initialize the final field
+     *  @param delay used to initialize the final field
+     *  @param inputs the number of input pins
+     *  @param table the truth table
+     */
+    public LutGate( String name, float delay, int inputs, long table ) {
+	super( name, delay );
+	this.inputs = inputs;
+	this.table = table;
+	int all = (1 << inputs) - 1;
+	one = fourState ? all : 0;
+	zero = all;
+    }
+
+    /** tell the gate that one of its input pins is in use
+     *  @param w the wire that is connected
+     *  @param pinName the name of the pin
+     *  @return corresponding pin number
+     */
+    public int registerInput( Wire w, String pinName ) {
+	int pin = -1;
+	for (int i = 0; i < inputs; i++) {
+	    if (inPinName( pinNumber( i ) ).equals( pinName )) pin = i;
+	}
+	if (pin < 0) {
+	    Errors.warn( "Illegal input pin: " + name + " " + pinName );
+	    return -1;
+	}
+	if ((used & (1 << pin)) != 0) Errors.warn(
+	    "Multiple uses of input pin: " + name + " " + pinName
+	);
+	used = used | (1 << pin);
+	return pinNumber( pin );
+    }
+
+    /** convert an index into the table's bits into a pin number
+     *  @param i the index, counting from 0
+     *  @return the pin number
+     */
+    private int pinNumber( int i ) {
+	return (inputs == 1) ? i : i + 1;
+    }
+
+    /** get the name of the input pin, given its number
+     * @param pinNumber the pin number
+     * @return pinName the name of the pin
+     */
+    public String inPinName( int pinNumber ) {
+	if (inputs == 1) return (pinNumber == 0) ? "in" : "???";
+	if ((pinNumber < 1) || (pinNumber > inputs)) return "???";
+	return "in" + pinNumber;
+    }
+
+    /** check the sanity of this gate's connections, by ensuring
+     *  that all of its input pins are in use by a wire,
+     *  also begins the simulation if the output is true when
+     *  all inputs are false, or in four-state simulation, if the
+     *  output is known when all inputs are unknown
+     *  @see outputChangeEvent
+     */
+    public void checkSanity() {
+	for (int i = 0; i < inputs; i++) {
+	    if ((used & (1 << i)) == 0) Errors.warn(
+		"Unused input pin: " + name + " " + inPinName( pinNumber( i ) )
+	    );
+	}
+
+	// this is a good time to launch the simulation
+	value = lookup();
+	if (value != initial()) {
+	    Simulator.schedule(
+		new Simulator.Event( this.delay ){
+		    void trigger(){
+			outputChangeEvent( time );
+		    }
+		}
+	    );
+	}
+    }
+
+    /** reconstruct the textual description of this gate
+     *  @return the textual description
+     */
+    public String toString() {
+	return "gate " + name + " lut " + delay + " " + inputs + " "
+	    + Long.toHexString( table );
+    }
+
+    /** get the kind of this gate
+     *  @return the kind
+     */
+    public String kind() {
+	return "lut";
+    }
+
+    /** get the number of input pins of this gate
+     *  @return the count
+     */
+    public int inputCount() {
+	return inputs;
+    }
+
+    /** @return the truth table of this gate */
+    long table() {
+	return table;
+    }
+
+    // Simulation methods
+
+    /** look up the output of this gate in its table, with one shift
+     *  and mask if every input is known, and otherwise by going through
+     *  all the rows the unknown inputs could select
+     *  @return the output value
+     */
+    private int lookup() {
+	int unknown = one & zero;
+	if (unknown == 0) return of( ((table >>> one) & 1) != 0 );
+	int known = one & ~unknown;
+	int v = 0;
+	for (int s = unknown; ; s = (s - 1) & unknown) {
+	    v = v | of( ((table >>> (known | s)) & 1) != 0 );
+	    if ((s == 0) || (v == X)) return v;
+	}
+    }
+
+    /** simulate the change of one of this gate's inputs, the new output
+     *  is looked up in the table, and if it changes then an output
+     *  change event is scheduled
+     *  @param time the time when the input changes
+     *  @param dstPin the pin that changes
+     *  @param v the new logic value
+     *  @see outputChangeEvent
+     */
+    public void inputChangeEvent( float time, int dstPin, int v ) {
+	int bit = 1 << ((inputs == 1) ? dstPin : dstPin - 1);
+	one = ((v & TRUE) != 0) ? (one | bit) : (one & ~bit);
+	zero = ((v & FALSE) != 0) ? (zero | bit) : (zero & ~bit);
+	int newVal = lookup();
+	if (newVal != value) {
+	    value = newVal;
+	    Simulator.schedule(
+		new Simulator.Event(
+		    time + base + (span * JitterModel.next( this ))) {
+		    void trigger(){
+			outputChangeEvent( time );
+		    }
+		}
+	    );
+	}
+    }
+
+} // class LutGate
+
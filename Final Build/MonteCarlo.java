@@ -0,0 +1,273 @@
+/* MonteCarlo.java
+ * Timing statistics over many randomly jittered simulation runs
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Simulates the same circuit many times with different seeds for the
+ *  random delays, on a pool of threads sharing one Netlist, and
+ *  collects the settle time of each gate in each run, the time of its
+ *  last output change.  Nothing is printed by the runs themselves; each
+ *  worker thread counts the settle times of its runs in histograms
+ *  shared by all the workers, made only for the gates that change, and
+ *  keeps its own sums and extremes, which are added up at the end.
+ *
+ *  The histograms span from zero to a time no gate can change after:
+ *  the end time, or for circuits without feedback loops or clock gates,
+ *  the longest path through the circuit with every gate at its slowest.
+ *  Gates can change until the end time in circuits with clock gates,
+ *  so those need an end time, as do circuits with feedback loops.
+ *  @see LogicalProcess
+ */
+public class MonteCarlo {
+    // the number of histogram bins per gate
+    public static final int BINS = 200;
+
+    private final Netlist net;
+    private final float endTime;
+
+    // the histograms span from 0 to span, each bin is width wide
+    private final double span;
+    private final double width;
+
+    // BINS counts per gate, counted by all the workers; a gate's
+    // histogram is made when it first changes
+    private final AtomicReferenceArray <AtomicLongArray> histogram;
+
+    // the totals over all runs, summed from the workers
+    private final long[] changed;	// runs where each gate changed
+    private final double[] sum;		// sum of settle times
+    private final float[] earliest;	// earliest settle time
+    private final float[] latest;	// latest settle time
+
+    private long runs = 0;
+
+    /** Construct a Monte Carlo timing analysis
+     *  @param net the circuit
+     *  @param endTime the time when each run stops, which must be finite
+     *  if the circuit has feedback loops or clock gates
+     *  @throws IllegalArgumentException if nothing bounds the run time
+     */
+    public MonteCarlo( Netlist net, float endTime ) {
+	this.net = net;
+	this.endTime = endTime;
+	if ((net.clocks.length > 0) && Float.isInfinite( endTime )) {
+	    throw new IllegalArgumentException(
+		"circuit with clock gates needs an end time"
+	    );
+	}
+	double bound = (net.clocks.length > 0)
+	    ? endTime
+	    : Math.min( longestPath( net ), endTime );
+	if (Double.isInfinite( bound )) throw new IllegalArgumentException(
+	    "circuit with feedback loops needs an end time"
+	);
+	this.span = Math.max( bound, Float.MIN_NORMAL );
+	this.width = span / BINS;
+	this.histogram
+	    = new AtomicReferenceArray <AtomicLongArray> ( net.gateCount );
+	this.changed = new long[net.gateCount];
+	this.sum = new double[net.gateCount];
+	this.earliest = new float[net.gateCount];
+	this.latest = new float[net.gateCount];
+	java.util.Arrays.fill( earliest, Float.POSITIVE_INFINITY );
+    }
+
+    /** @param net a circuit
+     *  @return a time no gate can change after, slightly more than the
+     *  longest path with every gate delay at its 5 percent maximum
+     *  jitter, or infinity if the circuit has feedback loops
+     */
+    private static double longestPath( Netlist net ) {
+	int[] order = net.topologicalOrder();
+	if (order == null) return Double.POSITIVE_INFINITY;
+	double[] arrival = new double[net.gateCount];	// of the last input
+	double longest = 0.0;
+	for (int g: order) {
+	    double out = arrival[g] + (net.delay[g] * 1.05);
+	    longest = Math.max( longest, out );
+	    for (int i = net.fanoutStart[g]; i < net.fanoutStart[g + 1]; i++) {
+		int w = net.fanout[i];
+		if (net.wireDstSlot[w] < 0) continue;
+		int d = net.wireDst[w];
+		arrival[d] = Math.max( arrival[d], out + net.wireDelay[w] );
+	    }
+	}
+	return longest * 1.0001;
+    }
+
+    /** @param g a gate
+     *  @return its histogram, made if it has none yet
+     */
+    private AtomicLongArray histogramOf( int g ) {
+	AtomicLongArray h = histogram.get( g );
+	if (h == null) {
+	    histogram.compareAndSet( g, null, new AtomicLongArray( BINS ) );
+	    h = histogram.get( g );
+	}
+	return h;
+    }
+
+    /** One worker's totals, and the simulation that adds to them
+     */
+    private final class Worker {
+	final long[] changed = new long[net.gateCount];
+	final double[] sum = new double[net.gateCount];
+	final float[] earliest = new float[net.gateCount];
+	final float[] latest = new float[net.gateCount];
+
+	Worker() {
+	    java.util.Arrays.fill( earliest, Float.POSITIVE_INFINITY );
+	}
+
+	// the settle time of each gate in the current run, or -1
+	final float[] settle = new float[net.gateCount];
+
+	/** simulate one run and add its settle times to the totals
+	 *  @param seed the seed for the run's random delays
+	 */
+	void run( long seed ) {
+	    java.util.Arrays.fill( settle, -1.0f );
+	    LogicalProcess lp = new LogicalProcess(
+		net, new GateState( net, seed ), 0, null, endTime
+	    ) {
+		void transition( NetEvent e, boolean v ) {
+		    settle[e.gate] = e.time;
+		}
+	    };
+	    lp.initialize();
+	    lp.run();
+
+	    for (int g = 0; g < net.gateCount; g++) {
+		float t = settle[g];
+		if (t < 0.0f) continue;
+		int bin = Math.min( (int)(t / width), BINS - 1 );
+		histogramOf( g ).incrementAndGet( bin );
+		changed[g]++;
+		sum[g] += t;
+		earliest[g] = Math.min( earliest[g], t );
+		latest[g] = Math.max( latest[g], t );
+	    }
+	}
+    }
+
+    /** simulate runs with consecutive seeds and add up the results
+     *  @param seed the seed of the first run
+     *  @param count the number of runs
+     *  @param threads the number of worker threads
+     */
+    public void run( long seed, long count, int threads ) {
+	final AtomicLong next = new AtomicLong( 0 );
+	ExecutorService pool = Executors.newFixedThreadPool( threads );
+	List <Future <Worker>> results = new ArrayList <Future <Worker>> ();
+	for (int t = 0; t < threads; t++) {
+	    results.add( pool.submit( () -> {
+		Worker w = new Worker();
+		for (long i = next.getAndIncrement(); i < count;
+		    i = next.getAndIncrement()
+		) {
+		    w.run( seed + i );
+		}
+		return w;
+	    } ) );
+	}
+	pool.shutdown();
+
+	try {
+	    for (Future <Worker> f: results) add( f.get() );
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    pool.shutdownNow();
+	    return;
+	} catch (ExecutionException e) {
+	    throw new RuntimeException( e.getCause() );
+	}
+	runs = runs + count;
+    }
+
+    /** add a worker's totals to the grand totals
+     *  @param w the worker
+     */
+    private void add( Worker w ) {
+	for (int g = 0; g < net.gateCount; g++) {
+	    changed[g] += w.changed[g];
+	    sum[g] += w.sum[g];
+	    earliest[g] = Math.min( earliest[g], w.earliest[g] );
+	    latest[g] = Math.max( latest[g], w.latest[g] );
+	}
+    }
+
+    /** @param g a gate
+     *  @return the gate's histogram of settle times, BINS counts, with
+     *  bin i counting times from i*binWidth() up to (i+1)*binWidth()
+     */
+    public long[] histogram( int g ) {
+	long[] counts = new long[BINS];
+	AtomicLongArray h = histogram.get( g );
+	if (h != null) {
+	    for (int b = 0; b < BINS; b++) counts[b] = h.get( b );
+	}
+	return counts;
+    }
+
+    /** @return the width in time of each histogram bin */
+    public double binWidth() {
+	return width;
+    }
+
+    /** estimate a percentile of a gate's settle time from its
+     *  histogram, interpolating within the bin, but never outside the
+     *  range of times actually seen
+     *  @param g the gate
+     *  @param p the percentile, from 0 to 100
+     *  @return the time, or NaN if the gate never changed
+     */
+    public double percentile( int g, double p ) {
+	if (changed[g] == 0) return Double.NaN;
+	double rank = changed[g] * p / 100.0;
+	AtomicLongArray h = histogram.get( g );
+	long below = 0;
+	for (int b = 0; b < BINS; b++) {
+	    long n = h.get( b );
+	    if ((n > 0) && (below + n >= rank)) {
+		double t = (b + ((rank - below) / n)) * width;
+		return Math.max( Math.min( t, latest[g] ), earliest[g] );
+	    }
+	    below = below + n;
+	}
+	return latest[g];
+    }
+
+    /** print one line of statistics per gate that is not an input gate
+     */
+    public void print() {
+	System.out.println(
+	    "-- " + runs + " runs, settle times: mean p50 p90 p99 max"
+	);
+	for (int g = 0; g < net.gateCount; g++) {
+	    if (net.isInput( g )) continue;
+	    if (changed[g] == 0) {
+		System.out.println( net.name[g] + " never changes" );
+		continue;
+	    }
+	    System.out.println(
+		net.name[g] + " changes in " + changed[g] + " runs, settles "
+		+ (float)(sum[g] / changed[g]) + " "
+		+ (float)percentile( g, 50 ) + " "
+		+ (float)percentile( g, 90 ) + " "
+		+ (float)percentile( g, 99 ) + " "
+		+ latest[g]
+	    );
+	}
+    }
+}
@@ -0,0 +1,59 @@
+/* NetEvent.java
+ * Events of the netlist simulation engines
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** Events of the netlist simulation engines.  Unlike Simulator.Event,
+ *  these are plain data, so they can be passed between threads and
+ *  ordered completely: by time, then depth, then gate, then type, then
+ *  pin, then value, which makes the order of simultaneous events
+ *  reproducible.  The depth of an event caused by another at the same
+ *  time is one more than its cause's, otherwise zero, so every event
+ *  orders after its cause and simulation handles events in exactly
+ *  this order, whatever the engine.
+ *  @see LogicalProcess
+ */
+final class NetEvent implements Comparable <NetEvent> {
+    // event types
+    static final byte OUTPUT = 0;	// a gate's output changes
+    static final byte INPUT = 1;	// a wire delivers a value to a gate
+
+    final float time;
+    final byte type;
+    final int gate;		// the gate that changes
+    final int slot;		// for INPUT, the input slot that changes,
+				// for a clock's OUTPUT, the edge number
+    final boolean value;	// for INPUT and clock edges, the new value
+    final int depth;		// causes at the same time, see above
+
+    NetEvent(
+	float time, byte type, int gate, int slot, boolean value, int depth
+    ) {
+	this.time = time;
+	this.type = type;
+	this.gate = gate;
+	this.slot = slot;
+	this.value = value;
+	this.depth = depth;
+    }
+
+    /** make an event caused by this one
+     *  @return the new event
+     */
+    NetEvent cause( float time, byte type, int gate, int slot, boolean value ) {
+	return new NetEvent(
+	    time, type, gate, slot, value, (time == this.time) ? depth + 1 : 0
+	);
+    }
+
+    public int compareTo( NetEvent e ) {
+	int c = Float.compare( time, e.time );
+	if (c == 0) c = Integer.compare( depth, e.depth );
+	if (c == 0) c = Integer.compare( gate, e.gate );
+	if (c == 0) c = Byte.compare( type, e.type );
+	if (c == 0) c = Integer.compare( slot, e.slot );
+	if (c == 0) c = Boolean.compare( value, e.value );
+	return c;
+    }
+}
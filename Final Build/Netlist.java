@@ -0,0 +1,331 @@
+/* Netlist.java
+ * Compact indexed representation of a logic circuit
+ * Built from the gates and wires read by Logic, for use by the
+ * alternative simulation engines that don't need the object graph.
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/** A Netlist is an immutable snapshot of a circuit where gates and wires
+ *  are identified by their index in the order they were declared.
+ *  Gate inputs are recorded as literals, a literal is the index of the
+ *  source gate shifted left one place, with the low bit set when the
+ *  source is the false output of a const gate, which reads as the
+ *  complement of that gate's value.
+ *  @see Logic
+ *  @see Gate
+ *  @see Wire
+ */
+public final class Netlist {
+    // gate kind codes, indexes into KIND_NAMES
+    public static final byte AND = 0;
+    public static final byte OR = 1;
+    public static final byte NOT = 2;
+    public static final byte CONST = 3;
+    public static final byte LUT = 4;
+    public static final byte NAND = 5;
+    public static final byte NOR = 6;
+    public static final byte XOR = 7;
+    public static final byte XNOR = 8;
+    public static final byte BUF = 9;
+    public static final byte CLOCK = 10;
+
+    /** textual kind names, in the order of the kind codes */
+    public static final String[] KIND_NAMES = {
+	"and", "or", "not", "const", "lut", "nand", "nor", "xor", "xnor", "buf",
+	"clock"
+    };
+
+    /** a literal used for input pins without a wire */
+    public static final int NONE = -1;
+
+    // the gates
+    public final int gateCount;
+    public final String[] name;		// gate names
+    public final String[] text;		// textual descriptions of gates
+    public final byte[] kind;		// kind codes of gates
+    public final float[] delay;		// gate delays, in seconds
+
+    // truth tables of gates, see LutGate; every gate with up to
+    // LutGate.MAX_INPUTS inputs has one, whatever its kind, wider gates
+    // are and, or, nand, nor, xor or xnor gates, evaluated with count
+    public final long[] table;
+
+    // inputs of gate g are literals fanin[faninStart[g]..faninStart[g+1]-1]
+    public final int[] faninStart;
+    public final int[] fanin;
+
+    public final int[] inputs;		// input gates, in declaration order
+    public final int[] outputs;		// output gates, in declaration order
+
+    // clock gates, in declaration order, and their periods, duty cycles
+    // and phases, indexed like clocks, see ClockGate
+    public final int[] clocks;
+    public final float[] period;
+    public final float[] duty;
+    public final float[] phase;
+
+    // the wires
+    public final int wireCount;
+    public final int[] wireSrc;		// source gate of each wire
+    public final int[] wireSrcPin;	// source pin number of each wire
+    public final int[] wireDst;		// destination gate of each wire
+    public final int[] wireDstSlot;	// destination input slot of each wire
+    public final float[] wireDelay;	// wire delays, in seconds
+
+    // wires out of gate g are fanout[fanoutStart[g]..fanoutStart[g+1]-1]
+    public final int[] fanoutStart;
+    public final int[] fanout;
+
+    /** Build a netlist from the gates and wires of a circuit
+     *  @param gates the gates, in order of declaration
+     *  @param wires the wires, in order of declaration
+     */
+    Netlist( List <Gate> gates, List <Wire> wires ) {
+	gateCount = gates.size();
+	name = new String[gateCount];
+	text = new String[gateCount];
+	kind = new byte[gateCount];
+	delay = new float[gateCount];
+	table = new long[gateCount];
+	faninStart = new int[gateCount + 1];
+
+	int clockCount = 0;
+	for (Gate i: gates) if (i instanceof ClockGate) clockCount++;
+	clocks = new int[clockCount];
+	period = new float[clockCount];
+	duty = new float[clockCount];
+	phase = new float[clockCount];
+	clockCount = 0;
+
+	IdentityHashMap <Gate,Integer> index
+	    = new IdentityHashMap <Gate,Integer> ();
+	int g = 0;
+	for (Gate i: gates) {
+	    index.put( i, g );
+	    name[g] = i.name;
+	    text[g] = i.toString();
+	    kind[g] = kindCode( i.kind() );
+	    delay[g] = i.delay;
+	    faninStart[g + 1] = faninStart[g] + i.inputCount();
+	    if (kind[g] == LUT) {
+		table[g] = ((LutGate)i).table();
+	    } else if (kind[g] == CLOCK) {
+		ClockGate c = (ClockGate)i;
+		clocks[clockCount] = g;
+		period[clockCount] = c.period();
+		duty[clockCount] = c.duty();
+		phase[clockCount] = c.phase();
+		clockCount++;
+	    } else {
+		table[g] = lower( kind[g], i.inputCount() );
+	    }
+	    g = g + 1;
+	}
+
+	fanin = new int[faninStart[gateCount]];
+	java.util.Arrays.fill( fanin, NONE );
+
+	wireCount = wires.size();
+	wireSrc = new int[wireCount];
+	wireSrcPin = new int[wireCount];
+	wireDst = new int[wireCount];
+	wireDstSlot = new int[wireCount];
+	wireDelay = new float[wireCount];
+	fanoutStart = new int[gateCount + 1];
+
+	int w = 0;
+	for (Wire i: wires) {
+	    int src = index.get( i.source() );
+	    int dst = index.get( i.destination() );
+	    wireSrc[w] = src;
+	    wireSrcPin[w] = i.srcPin();
+	    wireDst[w] = dst;
+	    wireDelay[w] = i.delay();
+	    int slot = slot( dst, i.dstPin() );
+	    wireDstSlot[w] = slot;
+	    if ((i.srcPin() >= 0) && (slot >= 0)) {
+		fanin[faninStart[dst] + slot] = (src << 1)
+		    | (((kind[src] == CONST) && (i.srcPin() == 0)) ? 1 : 0);
+	    }
+	    fanoutStart[src + 1]++;
+	    w = w + 1;
+	}
+
+	// bucket the wires by source gate
+	for (g = 0; g < gateCount; g++) {
+	    fanoutStart[g + 1] += fanoutStart[g];
+	}
+	fanout = new int[wireCount];
+	int[] fill = java.util.Arrays.copyOf( fanoutStart, gateCount );
+	for (w = 0; w < wireCount; w++) {
+	    fanout[fill[wireSrc[w]]++] = w;
+	}
+
+	int inputCount = 0;
+	int outputCount = 0;
+	for (g = 0; g < gateCount; g++) {
+	    if (isInput( g )) inputCount++;
+	    if (isOutput( g )) outputCount++;
+	}
+	inputs = new int[inputCount];
+	outputs = new int[outputCount];
+	inputCount = 0;
+	outputCount = 0;
+	for (g = 0; g < gateCount; g++) {
+	    if (isInput( g )) inputs[inputCount++] = g;
+	    if (isOutput( g )) outputs[outputCount++] = g;
+	}
+    }
+
+    /** convert a textual gate kind to a kind code
+     *  @param k the textual kind
+     *  @return the kind code
+     */
+    static byte kindCode( String k ) {
+	for (byte i = 0; i < KIND_NAMES.length; i++) {
+	    if (KIND_NAMES[i].equals( k )) return i;
+	}
+	throw new IllegalArgumentException( "unknown gate kind " + k );
+    }
+
+    /** lower a kind of gate to a truth table, as used by lut gates
+     *  @param k the kind code
+     *  @param inputs the number of inputs
+     *  @return the truth table, or 0 if there is none
+     */
+    static long lower( byte k, int inputs ) {
+	if ((inputs < 1) || (inputs > LutGate.MAX_INPUTS)) return 0;
+	long all = (inputs == LutGate.MAX_INPUTS) ? -1L : (1L << (1 << inputs)) - 1;
+	switch (k) {
+	case AND: return 1L << ((1 << inputs) - 1);	// only all ones
+	case OR:  return all & ~1L;			// all but all zeros
+	case NOT: return 1L;				// only the zero input
+	case NAND: return all & ~lower( AND, inputs );	// all but all ones
+	case NOR: return 1L;				// only the zero input
+	case XOR: return all & ODD;			// odd numbers of ones
+	case XNOR: return all & ~ODD;			// even numbers of ones
+	case BUF: return 2L;				// only the one input
+	default:  return 0;
+	}
+    }
+
+    // the truth table of a six input xor gate, bit i set when i has
+    // an odd number of ones; its low bits serve for narrower gates
+    private static final long ODD = 0x6996966996696996L;
+
+    /** evaluate an and, or, nand, nor, xor or xnor gate from the number
+     *  of its inputs that are true, as CountingGate does, for gates too
+     *  wide to have truth tables
+     *  @param k the kind code
+     *  @param ones the number of true inputs
+     *  @param inputs the number of inputs
+     *  @return the value
+     */
+    static boolean count( byte k, int ones, int inputs ) {
+	switch (k) {
+	case AND:  return ones == inputs;
+	case OR:   return ones != 0;
+	case NAND: return ones != inputs;
+	case NOR:  return ones == 0;
+	case XOR:  return (ones & 1) != 0;
+	case XNOR: return (ones & 1) == 0;
+	default:   return false;
+	}
+    }
+
+    /** convert a pin number, as returned by Gate.registerInput, into
+     *  an input slot; single input gates number their pin 0, others
+     *  number their pins from 1
+     *  @param g the gate
+     *  @param pin the pin number
+     *  @return the slot, or -1 if the pin number was illegal
+     */
+    private int slot( int g, int pin ) {
+	if (pin < 0) return -1;
+	if (arity( g ) == 1) return pin;
+	return pin - 1;
+    }
+
+    /** @param g a gate
+     *  @return the number of inputs of g
+     */
+    public int arity( int g ) {
+	return faninStart[g + 1] - faninStart[g];
+    }
+
+    /** @param g a gate
+     *  @return true if g has no outgoing wires, so its value is an output
+     */
+    public boolean isOutput( int g ) {
+	return (fanoutStart[g + 1] == fanoutStart[g]) && !isInput( g );
+    }
+
+    /** @param g a gate
+     *  @return true if g takes its value from outside the circuit, as
+     *  const gates do, and clock gates, when simulation is by cycles
+     */
+    public boolean isInput( int g ) {
+	return (kind[g] == CONST) || (kind[g] == CLOCK);
+    }
+
+    /** @param g a clock gate
+     *  @param n the number of an edge of its output, rising edges are even
+     *  @return the time of the edge
+     *  @see ClockGate.edgeTime
+     */
+    public float edgeTime( int g, long n ) {
+	int c = java.util.Arrays.binarySearch( clocks, g );
+	return ClockGate.edgeTime( delay[g], period[c], duty[c], phase[c], n );
+    }
+
+    /** a hash of the structure of this netlist, two netlists with the
+     *  same gate kinds and connections have the same hash; names and
+     *  delays are not included
+     *  @return the hash
+     */
+    public long structureHash() {
+	long h = 0xcbf29ce484222325L;
+	for (int g = 0; g < gateCount; g++) {
+	    h = (h ^ kind[g]) * 0x100000001b3L;
+	    h = (h ^ arity( g )) * 0x100000001b3L;
+	    h = (h ^ table[g]) * 0x100000001b3L;
+	}
+	for (int i = 0; i < fanin.length; i++) {
+	    h = (h ^ fanin[i]) * 0x100000001b3L;
+	}
+	return h;
+    }
+
+    /** find an order in which each gate follows all the gates that
+     *  feed its inputs
+     *  @return the gates in topological order, or null if the circuit
+     *  contains feedback loops
+     */
+    public int[] topologicalOrder() {
+	int[] pending = new int[gateCount];	// inputs not yet ordered
+	int[] order = new int[gateCount];
+	int tail = 0;
+	for (int g = 0; g < gateCount; g++) {
+	    for (int i = faninStart[g]; i < faninStart[g + 1]; i++) {
+		if (fanin[i] != NONE) pending[g]++;
+	    }
+	    if (pending[g] == 0) order[tail++] = g;
+	}
+	for (int head = 0; head < tail; head++) {
+	    int g = order[head];
+	    for (int i = fanoutStart[g]; i < fanoutStart[g + 1]; i++) {
+		int w = fanout[i];
+		if (wireDstSlot[w] < 0) continue;
+		int d = wireDst[w];
+		pending[d]--;
+		if (pending[d] == 0) order[tail++] = d;
+	    }
+	}
+	if (tail < gateCount) return null;
+	return order;
+    }
+}
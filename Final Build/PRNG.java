@@ -16,6 +16,13 @@ public class PRNG {
     private static Random stream = new Random(5);
     // Bug:  For debugging, use a known seed so errors are reproducable
 
+    /** start the stream over, so another simulation draws the same
+     *  numbers, as in Batch
+     */
+    static void reset() {
+	stream = new Random(5);
+    }
+
     /** get a number n where 0 <= n < bound
      *  @param bound
      *  @return n
@@ -0,0 +1,630 @@
+/* Partitioner.java
+ * Multilevel partitioning of a netlist for parallel simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/** Splits the gates of a netlist into partitions of nearly equal size
+ *  while cutting as little wire weight as possible, for the parallel
+ *  engines.  Gates are the vertices of an undirected graph whose edges
+ *  are the wires, weighted by how often each wire carries an event.
+ *
+ *  The graph is split in two repeatedly until there are enough parts.
+ *  Each bisection is multilevel: the graph is coarsened by contracting
+ *  heavy-edge matchings until it is small, bisected by greedy graph
+ *  growing from several random seeds, and the bisection is projected
+ *  back level by level, each time improved by Fiduccia-Mattheyses
+ *  refinement, moving the gates that reduce the cut the most while
+ *  keeping each side within a few percent of its share.
+ *  @see ConservativeSimulator
+ *  @see TimeWarpSimulator
+ */
+public class Partitioner {
+    // coarsening stops at this many vertices
+    private static final int COARSEST = 64;
+
+    // coarsening stops if a level shrinks the graph by less than this
+    private static final double SHRINK = 0.95;
+
+    // the allowed imbalance of each side of a bisection
+    private static final double TOLERANCE = 0.03;
+
+    // initial bisections tried on the coarsest graph
+    private static final int TRIES = 8;
+
+    // refinement passes per level, and how many moves without
+    // improvement a pass makes before it gives up
+    private static final int PASSES = 8;
+    private static final int PATIENCE = 64;
+
+    // events per gate and wire simulated to measure activity
+    private static final int PILOT = 16;
+
+    // the same circuit always gets the same partition
+    private final SplittableRandom random = new SplittableRandom( 1 );
+
+    /** An undirected graph with weighted vertices and edges, with the
+     *  edges of vertex v in adj[xadj[v]..xadj[v+1]-1]
+     */
+    private static final class Graph {
+	final int n;
+	final int[] vwgt;
+	final int[] xadj;
+	final int[] adj;
+	final long[] ewgt;
+
+	Graph( int n, int[] vwgt, int[] xadj, int[] adj, long[] ewgt ) {
+	    this.n = n;
+	    this.vwgt = vwgt;
+	    this.xadj = xadj;
+	    this.adj = adj;
+	    this.ewgt = ewgt;
+	}
+
+	/** @return the total vertex weight */
+	long total() {
+	    long t = 0;
+	    for (int w: vwgt) t = t + w;
+	    return t;
+	}
+
+	/** @return the heaviest vertex weight */
+	int heaviest() {
+	    int h = 0;
+	    for (int w: vwgt) h = Math.max( h, w );
+	    return h;
+	}
+    }
+
+    /** build a graph from a list of edges, each given in both
+     *  directions; self loops are dropped and parallel edges merged
+     *  @param n the number of vertices
+     *  @param vwgt the vertex weights
+     *  @param m the number of directed edges
+     *  @param from the source of each edge
+     *  @param to the destination of each edge
+     *  @param w the weight of each edge
+     *  @return the graph
+     */
+    private static Graph build(
+	int n, int[] vwgt, int m, int[] from, int[] to, long[] w
+    ) {
+	int[] start = new int[n + 1];
+	for (int e = 0; e < m; e++) start[from[e] + 1]++;
+	for (int v = 0; v < n; v++) start[v + 1] += start[v];
+	int[] next = Arrays.copyOf( start, n );
+	int[] edge = new int[m];
+	for (int e = 0; e < m; e++) edge[next[from[e]]++] = e;
+
+	// merge the edges of each vertex, marking where each neighbour is
+	int[] xadj = new int[n + 1];
+	int[] adj = new int[m];
+	long[] ewgt = new long[m];
+	int[] where = new int[n];
+	Arrays.fill( where, -1 );
+	int k = 0;
+	for (int v = 0; v < n; v++) {
+	    xadj[v] = k;
+	    for (int i = start[v]; i < start[v + 1]; i++) {
+		int e = edge[i];
+		int u = to[e];
+		if (u == v) continue;
+		if (where[u] >= xadj[v]) {
+		    ewgt[where[u]] += w[e];
+		} else {
+		    where[u] = k;
+		    adj[k] = u;
+		    ewgt[k] = w[e];
+		    k = k + 1;
+		}
+	    }
+	}
+	xadj[n] = k;
+	return new Graph(
+	    n, vwgt, xadj, Arrays.copyOf( adj, k ), Arrays.copyOf( ewgt, k )
+	);
+    }
+
+    /** partition a netlist
+     *  @param net the circuit
+     *  @param parts the number of partitions
+     *  @param activity the number of events carried by each wire, or
+     *  null to weigh all wires alike
+     *  @return the partition of each gate, numbered from 0
+     */
+    public static int[] partition( Netlist net, int parts, long[] activity ) {
+	long[] weight = weights( net, activity );
+	int m = 0;
+	int[] from = new int[2 * net.wireCount];
+	int[] to = new int[2 * net.wireCount];
+	long[] w = new long[2 * net.wireCount];
+	for (int i = 0; i < net.wireCount; i++) {
+	    if (net.wireDstSlot[i] < 0) continue;
+	    from[m] = net.wireSrc[i];
+	    to[m] = net.wireDst[i];
+	    w[m++] = weight[i];
+	    from[m] = net.wireDst[i];
+	    to[m] = net.wireSrc[i];
+	    w[m++] = weight[i];
+	}
+	int[] vwgt = new int[net.gateCount];
+	Arrays.fill( vwgt, 1 );
+	Graph g = build( net.gateCount, vwgt, m, from, to, w );
+
+	int[] ids = new int[net.gateCount];
+	for (int v = 0; v < ids.length; v++) ids[v] = v;
+	int[] part = new int[net.gateCount];
+	new Partitioner().split( g, ids, parts, 0, part );
+	return part;
+    }
+
+    /** the weight of cutting each wire: one more than its activity,
+     *  and for wires with no delay, more than all other wires together,
+     *  since the conservative engine can't simulate those cut
+     *  @param net the circuit
+     *  @param activity the events carried by each wire, or null
+     *  @return the weight of each wire
+     */
+    private static long[] weights( Netlist net, long[] activity ) {
+	long[] weight = new long[net.wireCount];
+	long sum = 0;
+	for (int w = 0; w < net.wireCount; w++) {
+	    weight[w] = 1 + ((activity == null) ? 0 : activity[w]);
+	    sum = sum + weight[w];
+	}
+	for (int w = 0; w < net.wireCount; w++) {
+	    if (net.wireDelay[w] <= 0.0f) weight[w] = weight[w] + sum;
+	}
+	return weight;
+    }
+
+    /** split a graph into k parts by recursive bisection
+     *  @param g the graph
+     *  @param ids the gate of each vertex
+     *  @param k the number of parts
+     *  @param first the number of the first part
+     *  @param part where to put the part of each gate
+     */
+    private void split( Graph g, int[] ids, int k, int first, int[] part ) {
+	if ((k <= 1) || (g.n <= 1)) {
+	    for (int v = 0; v < g.n; v++) part[ids[v]] = first;
+	    return;
+	}
+	int k0 = k / 2;
+	long[] target = new long[2];
+	target[0] = g.total() * k0 / k;
+	target[1] = g.total() - target[0];
+	int[] side = bisect( g, target );
+
+	for (int s = 0; s < 2; s++) {
+	    int[] local = new int[g.n];
+	    int n = 0;
+	    for (int v = 0; v < g.n; v++) local[v] = (side[v] == s) ? n++ : -1;
+	    int[] subIds = new int[n];
+	    int[] vwgt = new int[n];
+	    int m = 0;
+	    for (int v = 0; v < g.n; v++) {
+		if (local[v] < 0) continue;
+		subIds[local[v]] = ids[v];
+		vwgt[local[v]] = g.vwgt[v];
+		for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		    if (local[g.adj[e]] >= 0) m = m + 1;
+		}
+	    }
+	    int[] from = new int[m];
+	    int[] to = new int[m];
+	    long[] w = new long[m];
+	    m = 0;
+	    for (int v = 0; v < g.n; v++) {
+		if (local[v] < 0) continue;
+		for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		    int u = local[g.adj[e]];
+		    if (u < 0) continue;
+		    from[m] = local[v];
+		    to[m] = u;
+		    w[m++] = g.ewgt[e];
+		}
+	    }
+	    split(
+		build( n, vwgt, m, from, to, w ), subIds,
+		(s == 0) ? k0 : k - k0, (s == 0) ? first : first + k0, part
+	    );
+	}
+    }
+
+    /** multilevel bisection of a graph
+     *  @param g the graph
+     *  @param target the desired weight of each side
+     *  @return the side, 0 or 1, of each vertex
+     */
+    private int[] bisect( Graph g, long[] target ) {
+	Graph[] levels = new Graph[32];
+	int[][] cmaps = new int[32][];
+	levels[0] = g;
+	int top = 0;
+	long limit = Math.max( 1, (3 * g.total()) / (2 * COARSEST) );
+	while ((levels[top].n > COARSEST) && (top + 1 < levels.length)) {
+	    int[] cmap = new int[levels[top].n];
+	    Graph c = coarsen( levels[top], cmap, limit );
+	    if (c.n > SHRINK * levels[top].n) break;
+	    cmaps[top] = cmap;
+	    levels[++top] = c;
+	}
+
+	int[] side = initial( levels[top], target );
+	for (int l = top - 1; l >= 0; l--) {
+	    int[] fine = new int[levels[l].n];
+	    for (int v = 0; v < fine.length; v++) fine[v] = side[cmaps[l][v]];
+	    side = fine;
+	    refine( levels[l], side, target );
+	}
+	return side;
+    }
+
+    /** coarsen a graph by contracting a heavy-edge matching
+     *  @param g the graph
+     *  @param cmap where to put the coarse vertex of each vertex
+     *  @param limit the heaviest coarse vertex allowed
+     *  @return the coarse graph
+     */
+    private Graph coarsen( Graph g, int[] cmap, long limit ) {
+	int[] order = permutation( g.n );
+	boolean[] matched = new boolean[g.n];
+	int nc = 0;
+	for (int u: order) {
+	    if (matched[u]) continue;
+	    int best = -1;
+	    for (int e = g.xadj[u]; e < g.xadj[u + 1]; e++) {
+		int v = g.adj[e];
+		if (matched[v] || ((long)g.vwgt[u] + g.vwgt[v] > limit)) continue;
+		if ((best < 0)
+		    || (g.ewgt[e] > g.ewgt[best])
+		    || ((g.ewgt[e] == g.ewgt[best])
+			&& (g.vwgt[v] < g.vwgt[g.adj[best]]))
+		) {
+		    best = e;
+		}
+	    }
+	    matched[u] = true;
+	    cmap[u] = nc;
+	    if (best >= 0) {
+		matched[g.adj[best]] = true;
+		cmap[g.adj[best]] = nc;
+	    }
+	    nc = nc + 1;
+	}
+
+	int[] vwgt = new int[nc];
+	for (int v = 0; v < g.n; v++) vwgt[cmap[v]] += g.vwgt[v];
+	int m = g.xadj[g.n];
+	int[] from = new int[m];
+	int[] to = new int[m];
+	for (int v = 0; v < g.n; v++) {
+	    for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		from[e] = cmap[v];
+		to[e] = cmap[g.adj[e]];
+	    }
+	}
+	return build( nc, vwgt, m, from, to, g.ewgt );
+    }
+
+    /** @param n a count
+     *  @return the numbers 0 to n-1 in random order
+     */
+    private int[] permutation( int n ) {
+	int[] p = new int[n];
+	for (int i = 0; i < n; i++) p[i] = i;
+	for (int i = n - 1; i > 0; i--) {
+	    int j = random.nextInt( i + 1 );
+	    int t = p[i];
+	    p[i] = p[j];
+	    p[j] = t;
+	}
+	return p;
+    }
+
+    /** bisect a small graph by growing side 0 from several random
+     *  seeds, keeping the best after refinement
+     *  @param g the graph
+     *  @param target the desired weight of each side
+     *  @return the side of each vertex
+     */
+    private int[] initial( Graph g, long[] target ) {
+	int[] best = null;
+	long bestCut = Long.MAX_VALUE;
+	long bestOver = Long.MAX_VALUE;
+	long[] max = maxWeights( g, target );
+	for (int t = 0; t < TRIES; t++) {
+	    int[] side = grow( g, target[0] );
+	    refine( g, side, target );
+	    long[] pw = sideWeights( g, side );
+	    long over = overweight( pw, max );
+	    long cut = cut( g, side );
+	    if ((over < bestOver) || ((over == bestOver) && (cut < bestCut))) {
+		best = side;
+		bestCut = cut;
+		bestOver = over;
+	    }
+	}
+	return best;
+    }
+
+    /** grow side 0 from a random vertex, always adding the vertex that
+     *  cuts the least, until it has its share of the weight
+     *  @param g the graph
+     *  @param target0 the desired weight of side 0
+     *  @return the side of each vertex
+     */
+    private int[] grow( Graph g, long target0 ) {
+	int[] side = new int[g.n];
+	Arrays.fill( side, 1 );
+	long[] gain = new long[g.n];	// cut reduction if moved to side 0
+	for (int v = 0; v < g.n; v++) {
+	    for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) gain[v] -= g.ewgt[e];
+	}
+	PriorityQueue <long[]> frontier = new PriorityQueue <long[]> ( BY_GAIN );
+	long weight = 0;
+	int[] order = permutation( g.n );
+	int next = 0;
+	while (weight < target0) {
+	    long[] top = frontier.poll();
+	    int v;
+	    if (top != null) {
+		v = (int)top[1];
+		if ((side[v] == 0) || (top[0] != gain[v])) continue;
+	    } else {
+		// nothing adjacent is left, start again somewhere else
+		while ((next < g.n) && (side[order[next]] == 0)) next++;
+		if (next == g.n) break;
+		v = order[next];
+	    }
+	    if ((weight > 0) && (weight + g.vwgt[v] > target0)) {
+		if (2 * (target0 - weight) < g.vwgt[v]) break;
+	    }
+	    side[v] = 0;
+	    weight = weight + g.vwgt[v];
+	    for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		int u = g.adj[e];
+		if (side[u] == 0) continue;
+		gain[u] += 2 * g.ewgt[e];
+		frontier.add( new long[] { gain[u], u } );
+	    }
+	}
+	return side;
+    }
+
+    // order for queues of { gain, vertex }, highest gain first
+    private static final Comparator <long[]> BY_GAIN = (a, b) -> {
+	int c = Long.compare( b[0], a[0] );
+	return (c != 0) ? c : Long.compare( a[1], b[1] );
+    };
+
+    /** improve a bisection by Fiduccia-Mattheyses refinement
+     *  @param g the graph
+     *  @param side the side of each vertex, improved in place
+     *  @param target the desired weight of each side
+     */
+    private void refine( Graph g, int[] side, long[] target ) {
+	long[] max = maxWeights( g, target );
+	long[] gain = new long[g.n];	// cut reduction if moved
+	for (int pass = 0; pass < PASSES; pass++) {
+	    long[] pw = sideWeights( g, side );
+	    long cut = 0;
+	    List <PriorityQueue <long[]>> queues = List.of(
+		new PriorityQueue <long[]> ( BY_GAIN ),
+		new PriorityQueue <long[]> ( BY_GAIN )
+	    );
+	    for (int v = 0; v < g.n; v++) {
+		long external = 0;
+		long internal = 0;
+		for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		    if (side[g.adj[e]] != side[v]) {
+			external += g.ewgt[e];
+		    } else {
+			internal += g.ewgt[e];
+		    }
+		}
+		gain[v] = external - internal;
+		cut = cut + external;
+		if ((external > 0) || (pw[side[v]] > max[side[v]])) {
+		    queues.get( side[v] ).add( new long[] { gain[v], v } );
+		}
+	    }
+	    cut = cut / 2;
+
+	    long startCut = cut;
+	    long startOver = overweight( pw, max );
+	    long bestCut = startCut;
+	    long bestOver = startOver;
+	    int[] moves = new int[g.n];
+	    int count = 0;
+	    int best = 0;
+	    boolean[] locked = new boolean[g.n];
+
+	    while (count - best <= PATIENCE) {
+		// the best unlocked vertex on each side that can move
+		int v = -1;
+		for (int s = 0; s < 2; s++) {
+		    long[] top = queues.get( s ).peek();
+		    while ((top != null)
+			&& (locked[(int)top[1]] || (top[0] != gain[(int)top[1]]))
+		    ) {
+			queues.get( s ).poll();
+			top = queues.get( s ).peek();
+		    }
+		    if (top == null) continue;
+		    int u = (int)top[1];
+		    if (pw[1 - s] + g.vwgt[u] > max[1 - s]) continue;
+		    if ((v < 0) || (gain[u] > gain[v])
+			|| ((gain[u] == gain[v]) && (pw[s] > pw[1 - s]))
+		    ) {
+			v = u;
+		    }
+		}
+		if (v < 0) break;
+
+		int from = side[v];
+		queues.get( from ).poll();
+		locked[v] = true;
+		side[v] = 1 - from;
+		pw[from] -= g.vwgt[v];
+		pw[1 - from] += g.vwgt[v];
+		cut = cut - gain[v];
+		for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		    int u = g.adj[e];
+		    gain[u] += (side[u] == from) ? 2 * g.ewgt[e] : -2 * g.ewgt[e];
+		    if (!locked[u]) {
+			queues.get( side[u] ).add( new long[] { gain[u], u } );
+		    }
+		}
+		moves[count++] = v;
+
+		long over = overweight( pw, max );
+		if ((over < bestOver) || ((over == bestOver) && (cut < bestCut))) {
+		    bestOver = over;
+		    bestCut = cut;
+		    best = count;
+		}
+	    }
+
+	    // undo the moves after the best point
+	    for (int i = count - 1; i >= best; i--) side[moves[i]] ^= 1;
+	    if ((bestOver == startOver) && (bestCut >= startCut)) break;
+	}
+    }
+
+    /** @param g a graph
+     *  @param target the desired weight of each side
+     *  @return the most each side may weigh
+     */
+    private static long[] maxWeights( Graph g, long[] target ) {
+	long[] max = new long[2];
+	for (int s = 0; s < 2; s++) {
+	    max[s] = Math.max(
+		(long)Math.ceil( target[s] * (1.0 + TOLERANCE) ),
+		target[s] + g.heaviest()
+	    );
+	}
+	return max;
+    }
+
+    /** @param g a graph
+     *  @param side the side of each vertex
+     *  @return the weight of each side
+     */
+    private static long[] sideWeights( Graph g, int[] side ) {
+	long[] pw = new long[2];
+	for (int v = 0; v < g.n; v++) pw[side[v]] += g.vwgt[v];
+	return pw;
+    }
+
+    /** @param pw the weight of each side
+     *  @param max the most each side may weigh
+     *  @return how much the sides weigh too much
+     */
+    private static long overweight( long[] pw, long[] max ) {
+	return Math.max( 0, pw[0] - max[0] ) + Math.max( 0, pw[1] - max[1] );
+    }
+
+    /** @param g a graph
+     *  @param side the side of each vertex
+     *  @return the weight of the edges between the sides
+     */
+    private static long cut( Graph g, int[] side ) {
+	long cut = 0;
+	for (int v = 0; v < g.n; v++) {
+	    for (int e = g.xadj[v]; e < g.xadj[v + 1]; e++) {
+		if (side[g.adj[e]] != side[v]) cut = cut + g.ewgt[e];
+	    }
+	}
+	return cut / 2;
+    }
+
+    /** measure how often each wire carries an event in a short
+     *  sequential simulation of the start of the run
+     *  @param net the circuit
+     *  @param seed the seed for random delays
+     *  @param endTime the time when simulation stops
+     *  @return the number of events carried by each wire
+     */
+    public static long[] activity( Netlist net, long seed, float endTime ) {
+	final long[] pinEvents = new long[net.fanin.length];
+	LogicalProcess pilot = new LogicalProcess(
+	    net, new GateState( net, seed ), 0, null, endTime
+	) {
+	    void schedule( NetEvent e ) {
+		if ((e.type == NetEvent.INPUT) && (e.time <= endTime)) {
+		    pinEvents[net.faninStart[e.gate] + e.slot]++;
+		}
+		super.schedule( e );
+	    }
+
+	    void transition( NetEvent e, boolean v ) {
+		// the pilot run prints nothing
+	    }
+	};
+	pilot.metrics = new SimMetrics.Counter( false );	// nor is it counted
+	pilot.initialize();
+	long budget = (long)PILOT * (net.gateCount + net.wireCount);
+	for (long n = 0; (n < budget) && !pilot.queue.isEmpty(); n++) {
+	    pilot.process( pilot.queue.poll() );
+	}
+
+	long[] activity = new long[net.wireCount];
+	for (int w = 0; w < net.wireCount; w++) {
+	    int slot = net.wireDstSlot[w];
+	    if (slot >= 0) {
+		activity[w] = pinEvents[net.faninStart[net.wireDst[w]] + slot];
+	    }
+	}
+	return activity;
+    }
+
+    /** @param net the circuit
+     *  @param part the partition of each gate
+     *  @param parts the number of partitions
+     *  @param activity the events carried by each wire, as given to
+     *  partition, or null
+     *  @return a one line summary of the partition: the wires cut, the
+     *  weight cut as a share of all wire weight, see weights, and how
+     *  much the largest partition exceeds an equal share
+     */
+    public static String stats(
+	Netlist net, int[] part, int parts, long[] activity
+    ) {
+	long[] weight = weights( net, activity );
+	int cut = 0;
+	int connected = 0;
+	long cutWeight = 0;
+	long totalWeight = 0;
+	for (int w = 0; w < net.wireCount; w++) {
+	    if (net.wireDstSlot[w] < 0) continue;
+	    connected = connected + 1;
+	    totalWeight = totalWeight + weight[w];
+	    if (part[net.wireSrc[w]] != part[net.wireDst[w]]) {
+		cut = cut + 1;
+		cutWeight = cutWeight + weight[w];
+	    }
+	}
+	int[] size = new int[parts];
+	for (int p: part) size[p]++;
+	int largest = 0;
+	for (int s: size) largest = Math.max( largest, s );
+	double share = (double)net.gateCount / parts;
+	double imbalance = (share > 0) ? (largest / share) - 1.0 : 0.0;
+	double cutShare = (totalWeight > 0)
+	    ? (double)cutWeight / totalWeight : 0.0;
+	return parts + " partitions, " + cut + " of " + connected
+	    + " wires cut, weight " + cutWeight + " of " + totalWeight + " "
+	    + String.format( Locale.ROOT, "(%.1f%%)", 100.0 * cutShare )
+	    + " cut, largest " + largest + " gates, imbalance "
+	    + String.format( Locale.ROOT, "%.1f%%", 100.0 * imbalance );
+    }
+}
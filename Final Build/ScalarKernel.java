@@ -0,0 +1,37 @@
+/* ScalarKernel.java
+ * Plain Java evaluation kernel for bit-parallel simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** The plain Java kernel, used when no faster one is available
+ *  @see WordKernel
+ */
+final class ScalarKernel implements WordKernel {
+
+    public void run(
+	long[] v, int lanes, int op, int count, int arity,
+	int[] dst, int[] src, long[] mask, long outMask
+    ) {
+	for (int k = 0; k < count; k++) {
+	    int d = dst[k];
+	    int s0 = src[k];
+	    long m0 = mask[k];
+	    for (int w = 0; w < lanes; w++) v[d + w] = v[s0 + w] ^ m0;
+	    for (int s = 1; s < arity; s++) {
+		int si = src[s * count + k];
+		long mi = mask[s * count + k];
+		if (op == AND) {
+		    for (int w = 0; w < lanes; w++) v[d + w] &= v[si + w] ^ mi;
+		} else if (op == OR) {
+		    for (int w = 0; w < lanes; w++) v[d + w] |= v[si + w] ^ mi;
+		} else {
+		    for (int w = 0; w < lanes; w++) v[d + w] ^= v[si + w] ^ mi;
+		}
+	    }
+	    if (outMask != 0) {
+		for (int w = 0; w < lanes; w++) v[d + w] ^= outMask;
+	    }
+	}
+    }
+}
@@ -24,6 +24,8 @@ public class ScanSupport {
 	= Pattern.compile( "[a-zA-Z0-9_]*" );
     private static final Pattern intPattern
 	= Pattern.compile( "-?[0-9][0-9]*|");
+    private static final Pattern hexPattern
+	= Pattern.compile( "[0-9a-fA-F][0-9a-fA-F]*|");
     private static final Pattern floatPattern
 	= Pattern.compile( "-?[0-9][0-9]*\\.?[0-9]*|\\.[0-9][0-9]*|");
     private static final Pattern whitespace
@@ -63,7 +65,7 @@ public class ScanSupport {
 	sc.skip( intPattern );
 	String s = sc.match().group();
 	if ("".equals( s )) {
-	    Errors.warn( "Float expected: " + m.myString() );
+	    Errors.warn( "Int expected: " + m.myString() );
 	    sc.nextLine();
 	    throw new NotFound();
 	}
@@ -71,6 +73,38 @@ public class ScanSupport {
 	return Integer.parseInt( s );
     }
 
+    /** Get next int if there is one on this line
+     *  @param sc the scanner from which the int is scanned
+     *  @param otherwise the value to return if there is no int
+     *  @return the value, or otherwise if there wasn't one
+     */
+    public static int nextInt( Scanner sc, int otherwise ) {
+	sc.skip( whitespace );
+	sc.skip( intPattern );
+	String s = sc.match().group();
+	if ("".equals( s )) return otherwise;
+	return Integer.parseInt( s );
+    }
+
+    /** Get next hexadecimal number without skipping to next line
+     *  @param sc the scanner from which end of line is scanned
+     *  @param message the message to output if there was no number
+     *  @return the value if there was one, up to 64 bits
+     *  @throws NotFound if there wasn't one
+     */
+    public static long nextHex( Scanner sc, Message m ) throws NotFound {
+	sc.skip( whitespace );
+	sc.skip( hexPattern );
+	String s = sc.match().group();
+	if ("".equals( s ) || (s.length() > 16)) {
+	    Errors.warn( "Hexadecimal number expected: " + m.myString() );
+	    sc.nextLine();
+	    throw new NotFound();
+	}
+	// now, s is guaranteed to hold a legal 64 bit number
+	return Long.parseUnsignedLong( s, 16 );
+    }
+
     /** Get next float without skipping to next line (unlike sc.nextFloat())
      *  @param sc the scanner from which end of line is scanned
      *  @param message the message to output if there was no float
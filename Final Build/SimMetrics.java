@@ -0,0 +1,219 @@
+/* SimMetrics.java
+ * Runtime metrics of timed simulation, for JMX and progress reports
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counts what a timed simulation is doing, so its progress can be
+ *  watched from outside, through JMX, a periodic line on stderr, or
+ *  flight recorder events.
+ *
+ *  Each simulation engine counts in its own Counter, with plain fields
+ *  that no other thread touches, and adds its counts to the shared
+ *  totals only every FLUSH events and when it finishes.  The totals
+ *  are LongAdders, striped so that parallel engines adding to them at
+ *  once don't contend, so the cost per event is a few increments of
+ *  private fields, whatever the number of threads.  In return, the
+ *  totals lag the truth by up to FLUSH events per engine.
+ *  @see Simulator
+ *  @see LogicalProcess
+ *  @see FlightEvents
+ */
+public class SimMetrics implements SimMetricsMBean {
+    // events counted privately between additions to the totals
+    private static final int FLUSH = 4096;
+
+    // the totals
+    private static final LongAdder events = new LongAdder();
+    private static final LongAdder suppressed = new LongAdder();
+    private static final LongAdder depth = new LongAdder();
+    private static final LongAccumulator highWater
+	= new LongAccumulator( Math::max, 0 );
+    private static volatile float time = 0.0f;
+
+    private static long started = System.nanoTime();
+    private static ObjectName registered = null;
+    private static Thread reporter = null;
+
+    /** The counts of one engine, or one thread of a parallel engine,
+     *  not yet added to the totals
+     */
+    static final class Counter {
+	private final boolean counted;	// false if never added to totals
+	private long events = 0;
+	private long suppressed = 0;
+	private float time = 0.0f;
+	private int depth = 0;		// the queue depth seen last
+	private int reported = 0;	// the depth added to the totals
+	private int highWater = 0;
+
+	// the flight recorder event of the counts not yet added, and the
+	// time when it began, see FlightEvents
+	private FlightEvents.Batch batch = FlightEvents.batch();
+	private float batchStart = 0.0f;
+
+	/** @param counted false for simulations, like pilot runs, that
+	 *  are not part of the totals
+	 */
+	Counter( boolean counted ) {
+	    this.counted = counted;
+	}
+
+	/** count an event processed
+	 *  @param t the event's time
+	 *  @param queued the events in the queue after it was processed
+	 */
+	void event( float t, int queued ) {
+	    time = t;
+	    depth = queued;
+	    if (queued > highWater) highWater = queued;
+	    events = events + 1;
+	    if ((events & (FLUSH - 1)) == 0) flush();
+	}
+
+	/** note the time reached and the depth of a queue without
+	 *  counting an event
+	 *  @param t the time
+	 *  @param queued the events in the queue
+	 */
+	void note( float t, int queued ) {
+	    time = t;
+	    depth = queued;
+	    if (queued > highWater) highWater = queued;
+	}
+
+	/** count an output change event that changed nothing
+	 */
+	void suppress() {
+	    suppressed = suppressed + 1;
+	}
+
+	/** add the counts to the totals
+	 */
+	void flush() {
+	    if (counted) {
+		SimMetrics.events.add( events );
+		SimMetrics.suppressed.add( suppressed );
+		SimMetrics.depth.add( depth - reported );
+		SimMetrics.highWater.accumulate( highWater );
+		SimMetrics.time = time;
+		if (events > 0) {
+		    FlightEvents.batch(
+			batch, events, suppressed, batchStart, time, depth
+		    );
+		    batch = FlightEvents.batch();
+		    batchStart = time;
+		}
+	    }
+	    events = 0;
+	    suppressed = 0;
+	    reported = depth;
+	}
+    }
+
+    public long getEvents() {
+	return events.sum();
+    }
+
+    public double getEventsPerSecond() {
+	return events.sum() / ((System.nanoTime() - started) / 1e9);
+    }
+
+    public float getSimTime() {
+	return time;
+    }
+
+    public long getQueueDepth() {
+	return depth.sum();
+    }
+
+    public long getQueueHighWater() {
+	return highWater.get();
+    }
+
+    public long getSuppressedOutputs() {
+	return suppressed.sum();
+    }
+
+    /** start counting, register the MBean, and start the progress report
+     *  @param file the circuit file simulated, naming the MBean
+     *  @param interval the seconds between progress lines on stderr, or
+     *  0 for none
+     */
+    public static void start( String file, float interval ) {
+	started = System.nanoTime();
+	events.reset();
+	suppressed.reset();
+	depth.reset();
+	highWater.reset();
+	time = 0.0f;
+	try {
+	    ObjectName name = new ObjectName(
+		"Logic:type=SimMetrics,name=" + ObjectName.quote( file )
+	    );
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(
+		new SimMetrics(), name
+	    );
+	    registered = name;
+	} catch (InstanceAlreadyExistsException e) {
+	    // the same file is simulated twice in a batch, the first one shows
+	} catch (JMException e) {
+	    Errors.warn( "Can't register metrics, " + e.getMessage() );
+	}
+
+	if (interval > 0.0f) {
+	    final long nanos = (long)(interval * 1e9);
+	    reporter = new Thread( () -> {
+		SimMetrics m = new SimMetrics();
+		long last = 0;
+		long lastAt = started;
+		try {
+		    for (;;) {
+			Thread.sleep( nanos / 1000000, (int)(nanos % 1000000) );
+			long now = System.nanoTime();
+			long n = m.getEvents();
+			System.err.println( String.format(
+			    "-- progress %.1f s: %d events, %.0f events/s,"
+			    + " time %s, queue %d (high %d), %d suppressed",
+			    (now - started) / 1e9, n, (n - last) / ((now - lastAt) / 1e9),
+			    m.getSimTime(), m.getQueueDepth(), m.getQueueHighWater(),
+			    m.getSuppressedOutputs()
+			) );
+			last = n;
+			lastAt = now;
+		    }
+		} catch (InterruptedException e) {
+		    // stopped
+		}
+	    }, "progress" );
+	    reporter.setDaemon( true );
+	    reporter.start();
+	}
+    }
+
+    /** stop the progress report and unregister the MBean
+     */
+    public static void stop() {
+	if (reporter != null) {
+	    reporter.interrupt();
+	    reporter = null;
+	}
+	if (registered != null) {
+	    try {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+		    registered
+		);
+	    } catch (JMException e) {
+		// already gone
+	    }
+	    registered = null;
+	}
+    }
+}
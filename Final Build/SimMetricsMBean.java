@@ -0,0 +1,29 @@
+/* SimMetricsMBean.java
+ * Management interface of the metrics of a timed simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** The attributes SimMetrics offers through JMX, as the MBean
+ *  Logic:type=SimMetrics,name="file" while the file is simulated
+ *  @see SimMetrics
+ */
+public interface SimMetricsMBean {
+    /** @return the number of events processed so far */
+    long getEvents();
+
+    /** @return the events processed per second since the start */
+    double getEventsPerSecond();
+
+    /** @return the simulated time most recently reached */
+    float getSimTime();
+
+    /** @return the number of events waiting in event queues */
+    long getQueueDepth();
+
+    /** @return the most events ever waiting in one event queue */
+    long getQueueHighWater();
+
+    /** @return the output change events that changed nothing */
+    long getSuppressedOutputs();
+}
@@ -9,6 +9,7 @@
  * Bug notices in the code indicate unsolved problems
  */
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -18,8 +19,12 @@ import java.util.PriorityQueue;
 public class Simulator {
 
     public static abstract class Event {
-	// time of event, always set by subclass constructor, effectively final
-	protected final float time;
+	// time of event, always set by subclass constructor, and changed
+	// only by reschedule, once the event has been triggered
+	protected float time;
+
+	// number of event, in the order scheduled, set by schedule
+	long seq;
 
 	// constructor
 	Event( float t ) {
@@ -35,21 +40,99 @@ public class Simulator {
 	    (Event e1, Event e2) -> Float.compare( e1.time, e2.time )
 	);
 
+    // when replaying a log, the pending events by number, see EventLog
+    private static HashMap <Long,Event> pending
+	= new HashMap <Long,Event> ();
+
+    private static long scheduled = 0;	// events scheduled so far
+
+    // what the simulation is doing, see SimMetrics
+    static SimMetrics.Counter metrics = new SimMetrics.Counter( true );
+
     /** schedule one new event
      *  @param e the event to schedule
      */
     public static void schedule( Event e ) {
-	eventSet.add( e );
+	e.seq = scheduled;
+	scheduled = scheduled + 1;
+	if (EventLog.replaying()) {
+	    pending.put( e.seq, e );
+	} else {
+	    eventSet.add( e );
+	}
+    }
+
+    /** schedule an event again once it has been triggered, at a later
+     *  time, so events that recur, such as clock edges, need not be made
+     *  anew each time
+     *  @param e the event, not now pending
+     *  @param t its new time
+     */
+    public static void reschedule( Event e, float t ) {
+	e.time = t;
+	schedule( e );
+    }
+
+    /** forget all pending events, so another simulation can start, as
+     *  in Bench and Batch
+     */
+    static void clear() {
+	eventSet.clear();
+	pending.clear();
+	scheduled = 0;
+	metrics = new SimMetrics.Counter( true );
     }
 
     /** main loop that runs the simulation
      *  This must be called after all initial events are scheduled.
+     *  @param endTime the simulation stops before any later event
+     */
+    public static void run( float endTime ) {
+	run( endTime, Long.MAX_VALUE );
+    }
+
+    /** main loop that runs the simulation, recording or replaying the
+     *  order of events if EventLog is so set
+     *  This must be called after all initial events are scheduled.
+     *  @param endTime the simulation stops before any later event
+     *  @param until the simulation stops after this many events
+     *  @return the number of events triggered
      */
-    public static void run() {
-	while (!eventSet.isEmpty()) {
-	    Event e = eventSet.remove();
-	    e.trigger();
+    public static long run( float endTime, long until ) {
+	long count = 0;
+	float now = 0.0f;
+	if (EventLog.replaying()) {
+	    // the log already ends at endTime
+	    while (count < until) {
+		long seq = EventLog.readEvent();
+		if (seq < 0) break;
+		Event e = pending.remove( seq );
+		if (e == null) Errors.fatal( "Log file doesn't match the circuit" );
+		count = count + 1;
+		now = e.time;
+		e.trigger();
+		metrics.event( now, pending.size() );
+		if (Footprint.on) Footprint.queued( pending.values() );
+	    }
+	} else {
+	    while (!eventSet.isEmpty() && (eventSet.peek().time <= endTime)
+		&& (count < until)
+	    ) {
+		Event e = eventSet.remove();
+		if (EventLog.recording()) EventLog.writeEvent( e.seq );
+		count = count + 1;
+		now = e.time;
+		e.trigger();
+		metrics.event( now, eventSet.size() );
+		if (Footprint.on) Footprint.queued( eventSet );
+	    }
+	}
+	metrics.flush();
+	EventLog.close();
+	if (count == until) {
+	    System.out.println( "-- stopped after " + count + " events at " + now );
 	}
+	return count;
     }
 } // class Simulator
 
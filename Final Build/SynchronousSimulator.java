@@ -0,0 +1,175 @@
+/* SynchronousSimulator.java
+ * Timed netlist simulation evaluating simultaneous events in parallel
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/** Simulates a whole netlist one time step at a time.  Each step takes
+ *  every pending event with the earliest time and depth, so no event of
+ *  the step can cause another in the same step.  The step's events are
+ *  in order by gate, and are divided into chunks at gate boundaries, so
+ *  each gate's events are all in one chunk and the chunks touch
+ *  disjoint gate state; the chunks are simulated in parallel on a fork
+ *  join pool, each collecting the events it schedules and the changes
+ *  it reports.  These are then merged in chunk order, so the results
+ *  are those of sequential simulation whatever the number of threads.
+ *  @see LogicalProcess
+ *  @see NetEvent
+ */
+public class SynchronousSimulator {
+    // steps with fewer events than this are not worth dividing
+    private static final int GRAIN = 256;
+
+    // chunks per thread, to even out the load
+    private static final int CHUNKS = 4;
+
+    private final Lane[] lanes;
+    private final ForkJoinPool pool;
+    private final PriorityQueue <NetEvent> queue = new PriorityQueue <NetEvent> ();
+
+    // the depth of the queue, the lanes count the events, see SimMetrics
+    private final SimMetrics.Counter metrics = new SimMetrics.Counter( true );
+
+    /** A logical process over the whole circuit that simulates one
+     *  chunk of a step, keeping what it schedules and reports
+     */
+    private static final class Lane extends LogicalProcess
+	implements Callable <Void>
+    {
+	final List <NetEvent> scheduled = new ArrayList <NetEvent> ();
+	final List <NetEvent> transitions = new ArrayList <NetEvent> ();
+
+	// the chunk, batch[first..last-1]
+	NetEvent[] batch;
+	int first;
+	int last;
+
+	Lane( Netlist net, GateState state, float endTime ) {
+	    super( net, state, 0, null, endTime );
+	}
+
+	public Void call() {
+	    for (int i = first; i < last; i++) process( batch[i] );
+	    return null;
+	}
+
+	void schedule( NetEvent e ) {
+	    if (e.time <= endTime) scheduled.add( e );
+	}
+
+	void transition( NetEvent e, boolean v ) {
+	    transitions.add( new NetEvent( e.time, e.type, e.gate, 0, v, e.depth ) );
+	}
+    }
+
+    /** Construct a simulation
+     *  @param net the circuit
+     *  @param seed the seed for random delays
+     *  @param endTime the time when simulation stops
+     *  @param threads the number of threads
+     */
+    public SynchronousSimulator(
+	Netlist net, long seed, float endTime, int threads
+    ) {
+	GateState state = new GateState( net, seed );
+	lanes = new Lane[threads * CHUNKS];
+	for (int c = 0; c < lanes.length; c++) {
+	    lanes[c] = new Lane( net, state, endTime );
+	}
+	pool = new ForkJoinPool( threads, Batch.workers(), null, false );
+    }
+
+    /** simulate until no events remain, printing the changes
+     */
+    public void run() {
+	lanes[0].initialize();
+	merge( lanes[0] );
+
+	NetEvent[] batch = new NetEvent[64];
+	try {
+	    while (!queue.isEmpty()) {
+		NetEvent e = queue.poll();
+		int n = 0;
+		batch[n++] = e;
+		while (!queue.isEmpty()
+		    && (queue.peek().time == e.time)
+		    && (queue.peek().depth == e.depth)
+		) {
+		    if (n == batch.length) {
+			batch = java.util.Arrays.copyOf( batch, 2 * n );
+		    }
+		    batch[n++] = queue.poll();
+		}
+		step( batch, n );
+		// cheap beside the step itself
+		metrics.note( e.time, queue.size() );
+		metrics.flush();
+	    }
+	} finally {
+	    pool.shutdown();
+	    for (Lane lane: lanes) lane.metrics.flush();
+	}
+    }
+
+    /** simulate one step
+     *  @param batch the events of the step, in order
+     *  @param n the number of events
+     */
+    private void step( NetEvent[] batch, int n ) {
+	int chunks = (n < GRAIN) ? 1 : lanes.length;
+	int first = 0;
+	for (int c = 0; c < chunks; c++) {
+	    int last = (int)((long)n * (c + 1) / chunks);
+	    while ((last > first) && (last < n)
+		&& (batch[last].gate == batch[last - 1].gate)
+	    ) {
+		last = last + 1;
+	    }
+	    last = Math.max( last, first );
+	    lanes[c].batch = batch;
+	    lanes[c].first = first;
+	    lanes[c].last = last;
+	    first = last;
+	}
+
+	if (chunks == 1) {
+	    lanes[0].call();
+	} else {
+	    List <Lane> work = new ArrayList <Lane> ( chunks );
+	    for (int c = 0; c < chunks; c++) work.add( lanes[c] );
+	    try {
+		for (Future <Void> f: pool.invokeAll( work )) f.get();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		queue.clear();
+		return;
+	    } catch (ExecutionException e) {
+		throw new RuntimeException( e.getCause() );
+	    }
+	}
+	for (int c = 0; c < chunks; c++) {
+	    lanes[c].batch = null;
+	    merge( lanes[c] );
+	}
+    }
+
+    /** take the events a lane scheduled and print the changes it saw
+     *  @param lane the lane
+     */
+    private void merge( Lane lane ) {
+	queue.addAll( lane.scheduled );
+	lane.scheduled.clear();
+	for (NetEvent e: lane.transitions) {
+	    System.out.println( lane.describe( e.time, e.gate, e.value ) );
+	}
+	lane.transitions.clear();
+    }
+}
@@ -0,0 +1,401 @@
+/* TimeWarpSimulator.java
+ * Optimistic parallel discrete-event simulation of a netlist
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Runs one logical process per partition of the circuit, each on its
+ *  own thread, using Jefferson's Time Warp protocol.  Unlike the
+ *  conservative engine, a partition simulates whatever events it has
+ *  without waiting for its neighbours, so wires with little or no delay
+ *  may cross partitions.  Before each event it saves the state of the
+ *  one gate the event touches; when a message arrives for a time it
+ *  has already simulated past, it rolls back, restoring the saved
+ *  states in reverse, withdrawing the events it scheduled and sending
+ *  an anti-message to cancel each event it sent.  Withdrawn events stay
+ *  queued, marked as cancelled, and are dropped when they come up, so
+ *  no withdrawal searches the queue.
+ *
+ *  Every so often all partitions stop and agree on the global virtual
+ *  time, the earliest time of any event not yet simulated anywhere.
+ *  Nothing before it can be rolled back, so the saved states before it
+ *  are discarded and the transitions before it are committed and, once
+ *  all partitions have committed theirs, printed in time order.  They
+ *  are the same as sequential simulation with the same seed.
+ *  @see LogicalProcess
+ *  @see ConservativeSimulator
+ */
+public class TimeWarpSimulator {
+    // events a partition simulates before asking for the virtual time
+    private static final int GVT_INTERVAL = 1000;
+
+    // how long an idle partition waits before asking, in nanoseconds;
+    // it is woken sooner if another partition asks
+    private static final long GVT_IDLE = 1000000L;
+
+    private final Partition[] partitions;
+    private final Thread[] threads;
+
+    // the first exception that ended a partition's thread, if any
+    private final AtomicReference <Throwable> failure
+	= new AtomicReference <Throwable> ();
+
+    // partitions wait for each other here, first to stop, then to
+    // agree on the virtual time once all have reported, then to print
+    // what all have committed
+    private final CyclicBarrier stopped;
+    private final CyclicBarrier agreed;
+    private final CyclicBarrier printed;
+
+    // set when some partition wants the virtual time computed
+    private volatile boolean gvtRequested = false;
+
+    // the most recent global virtual time, and when it was computed
+    private volatile float gvt = 0.0f;
+    private volatile long gvtAt = System.nanoTime();
+
+    /** A message between partitions, an event or an anti-message
+     *  cancelling an event sent earlier; the anti-message carries the
+     *  very same event object, so the receiver can find it
+     */
+    private static final class Message {
+	final NetEvent event;
+	final boolean anti;
+
+	Message( NetEvent event, boolean anti ) {
+	    this.event = event;
+	    this.anti = anti;
+	}
+    }
+
+    // the message waking an idle partition to compute the virtual time
+    private static final Message WAKE = new Message( null, false );
+
+    /** What a partition saved before simulating one event, and what
+     *  the event did, so it can be undone
+     */
+    private static final class Record {
+	final NetEvent event;
+
+	// the state of the event's gate before the event
+	final boolean pin;
+	final boolean value;
+	final boolean outValue;
+	final long draws;
+
+	// events scheduled and sent by the event, null if none
+	List <NetEvent> scheduled = null;
+	List <NetEvent> sent = null;
+
+	// the output change, holding the new value, null if none
+	NetEvent transition = null;
+
+	Record( NetEvent event, boolean pin, GateState state ) {
+	    this.event = event;
+	    this.pin = pin;
+	    this.value = state.value[event.gate];
+	    this.outValue = state.outValue[event.gate];
+	    this.draws = state.draws[event.gate];
+	}
+    }
+
+    /** Construct a parallel simulation
+     *  @param net the circuit
+     *  @param part the partition of each gate, numbered from 0
+     *  @param seed the seed for random delays
+     *  @param endTime the time when simulation stops
+     */
+    public TimeWarpSimulator(
+	Netlist net, int[] part, long seed, float endTime
+    ) {
+	int parts = 0;
+	for (int p: part) parts = Math.max( parts, p + 1 );
+
+	GateState state = new GateState( net, seed );
+	partitions = new Partition[parts];
+	for (int p = 0; p < parts; p++) {
+	    partitions[p] = new Partition( net, state, p, part, endTime );
+	}
+	threads = new Thread[parts];
+	stopped = new CyclicBarrier( parts );
+	agreed = new CyclicBarrier( parts, this::agree );
+	printed = new CyclicBarrier( parts, this::print );
+    }
+
+    /** ask all partitions to stop and compute the virtual time, waking
+     *  those waiting for messages
+     */
+    private void requestGvt() {
+	if (gvtRequested) return;
+	gvtRequested = true;
+	for (Partition p: partitions) p.inbox.add( WAKE );
+    }
+
+    /** note the exception that ended a partition's thread and
+     *  interrupt the others, which breaks the barriers they wait at or
+     *  will wait at, so all of them give up
+     *  @param e the exception
+     */
+    private void fail( Throwable e ) {
+	failure.compareAndSet( null, e );
+	for (Thread t: threads) {
+	    if (t != Thread.currentThread()) t.interrupt();
+	}
+    }
+
+    /** compute the global virtual time once every partition has found
+     *  its own earliest time; run by the last partition to arrive
+     */
+    private void agree() {
+	float t = Float.POSITIVE_INFINITY;
+	for (Partition p: partitions) t = Math.min( t, p.earliest );
+	gvt = t;
+	gvtAt = System.nanoTime();
+	gvtRequested = false;
+    }
+
+    /** print the transitions the partitions have committed since the
+     *  virtual time was last computed, in time order; run by the last
+     *  partition to commit
+     */
+    private void print() {
+	List <NetEvent> all = new ArrayList <NetEvent> ();
+	for (Partition p: partitions) {
+	    all.addAll( p.committed );
+	    p.committed.clear();
+	}
+	Collections.sort( all );
+	for (NetEvent e: all) {
+	    System.out.println( partitions[0].describe( e.time, e.gate, e.value ) );
+	}
+    }
+
+    /** simulate, one thread per partition, printing the transitions
+     *  each time the virtual time is computed; if a partition's thread
+     *  fails, all stop, and its exception is thrown here
+     */
+    public void run() {
+	for (Partition p: partitions) p.initialize();
+	for (int p = 0; p < partitions.length; p++) {
+	    threads[p] = new Thread( partitions[p]::loop, "partition " + p );
+	}
+	for (Thread t: threads) t.start();
+	for (Thread t: threads) {
+	    try {
+		t.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    }
+	}
+	Throwable f = failure.get();
+	if (f instanceof Error) throw (Error)f;
+	if (f != null) throw (RuntimeException)f;
+    }
+
+    /** The logical process of one partition, with its thread's loop
+     */
+    private final class Partition extends LogicalProcess {
+	final LinkedBlockingQueue <Message> inbox
+	    = new LinkedBlockingQueue <Message> ();
+
+	// the events simulated since the virtual time, oldest first
+	final ArrayDeque <Record> history = new ArrayDeque <Record> ();
+
+	// the record of the event being simulated, null if none
+	Record current = null;
+
+	// events simulated since the virtual time was last computed
+	int sinceGvt = 0;
+
+	// this partition's earliest unsimulated time, for agree()
+	float earliest;
+
+	// events withdrawn while queued, dropped when they come up
+	final HashSet <NetEvent> cancelled = new HashSet <NetEvent> ();
+
+	// output changes committed but not yet printed, holding the new
+	// value
+	final List <NetEvent> committed = new ArrayList <NetEvent> ();
+
+	Partition(
+	    Netlist net, GateState state, int id, int[] part, float endTime
+	) {
+	    super( net, state, id, part, endTime );
+	}
+
+	/** the thread's main loop */
+	void loop() {
+	    try {
+		while (true) {
+		    if (gvtRequested) {
+			if (!synchronize()) return;
+			continue;
+		    }
+
+		    Message m = inbox.poll();
+		    while (m != null) {
+			receive( m );
+			m = inbox.poll();
+		    }
+
+		    drop();
+		    long idle = System.nanoTime() - gvtAt;
+		    if (!queue.isEmpty()) {
+			simulate( queue.poll() );
+			if (++sinceGvt >= GVT_INTERVAL) requestGvt();
+		    } else if (idle > GVT_IDLE) {
+			requestGvt();
+		    } else {
+			// wait for a message, a WAKE, or the idle time to pass
+			m = inbox.poll( GVT_IDLE - idle, TimeUnit.NANOSECONDS );
+			if (m != null) receive( m );
+		    }
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    } catch (BrokenBarrierException e) {
+		// another partition failed or was interrupted, give up too
+	    } catch (RuntimeException | Error e) {
+		fail( e );
+	    } finally {
+		metrics.flush();
+	    }
+	}
+
+	/** stop with the other partitions, compute the virtual time and
+	 *  commit everything before it
+	 *  @return false when no events remain anywhere
+	 */
+	boolean synchronize()
+	    throws InterruptedException, BrokenBarrierException
+	{
+	    // once all have stopped, nothing is sent until all agree
+	    stopped.await();
+	    drop();
+	    float t = queue.isEmpty()
+		? Float.POSITIVE_INFINITY : queue.peek().time;
+	    for (Message m: inbox) {
+		if (m != WAKE) t = Math.min( t, m.event.time );
+	    }
+	    earliest = t;
+	    agreed.await();
+
+	    float g = gvt;
+	    while (!history.isEmpty() && (history.peekFirst().event.time < g)) {
+		Record r = history.pollFirst();
+		if (r.transition != null) committed.add( r.transition );
+	    }
+	    printed.await();
+	    sinceGvt = 0;
+	    return g != Float.POSITIVE_INFINITY;
+	}
+
+	/** drop the cancelled events at the head of the queue */
+	void drop() {
+	    while (!queue.isEmpty() && cancelled.remove( queue.peek() )) {
+		queue.poll();
+	    }
+	}
+
+	/** take in one message, rolling back if it is a straggler or
+	 *  cancels an event already simulated
+	 */
+	void receive( Message m ) {
+	    NetEvent e = m.event;
+	    if (m == WAKE) {
+		// nothing to do, the partition was only woken
+	    } else if (!m.anti) {
+		while (!history.isEmpty()
+		    && (history.peekLast().event.compareTo( e ) > 0)
+		) {
+		    undo();
+		}
+		queue.add( e );
+	    } else {
+		// roll back past the event if it was simulated, undo puts
+		// it back in the queue
+		while (!history.isEmpty()
+		    && (history.peekLast().event.compareTo( e ) >= 0)
+		) {
+		    undo();
+		}
+		cancelled.add( e );
+	    }
+	}
+
+	/** simulate one event, saving what is needed to undo it
+	 *  @param e the event
+	 */
+	void simulate( NetEvent e ) {
+	    int g = e.gate;
+	    boolean pin = (e.type == NetEvent.INPUT)
+		&& state.pin[net.faninStart[g] + e.slot];
+	    current = new Record( e, pin, state );
+	    process( e );
+	    history.addLast( current );
+	    current = null;
+	}
+
+	/** undo the most recently simulated event
+	 *  @return its record
+	 */
+	Record undo() {
+	    Record r = history.pollLast();
+	    NetEvent e = r.event;
+	    int g = e.gate;
+	    if (e.type == NetEvent.INPUT) {
+		int i = net.faninStart[g] + e.slot;
+		if (state.pin[i] != r.pin) state.ones[g] += r.pin ? 1 : -1;
+		state.pin[i] = r.pin;
+	    }
+	    state.value[g] = r.value;
+	    state.outValue[g] = r.outValue;
+	    state.draws[g] = r.draws;
+
+	    // events it scheduled that were simulated are already undone
+	    if (r.scheduled != null) cancelled.addAll( r.scheduled );
+	    if (r.sent != null) {
+		for (NetEvent s: r.sent) {
+		    partitions[part[s.gate]].inbox.add( new Message( s, true ) );
+		}
+	    }
+	    queue.add( e );
+	    return r;
+	}
+
+	void schedule( NetEvent e ) {
+	    if (e.time > endTime) return;
+	    queue.add( e );
+	    if (current != null) {
+		if (current.scheduled == null) {
+		    current.scheduled = new ArrayList <NetEvent> ();
+		}
+		current.scheduled.add( e );
+	    }
+	}
+
+	void send( NetEvent e, int dst ) {
+	    if (e.time > endTime) return;
+	    partitions[dst].inbox.add( new Message( e, false ) );
+	    if (current.sent == null) current.sent = new ArrayList <NetEvent> ();
+	    current.sent.add( e );
+	}
+
+	void transition( NetEvent e, boolean v ) {
+	    current.transition
+		= new NetEvent( e.time, e.type, e.gate, 0, v, e.depth );
+	}
+    }
+}
@@ -0,0 +1,161 @@
+/* VectorKernel.java
+ * SIMD evaluation kernel for bit-parallel simulation
+ * This uses the incubating Vector API, so it is not listed in classes;
+ * compile and run it with --add-modules jdk.incubator.vector
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A word kernel using SIMD instructions.  When each signal has at
+ *  least a vector's worth of lanes, each gate is evaluated a vector of
+ *  lanes at a time; with one lane per signal, a vector's worth of gates
+ *  of the run are evaluated together, gathering their input words.
+ *  BitSimulator loads this class by name and falls back to ScalarKernel
+ *  when the Vector API is not available.
+ *  @see WordKernel
+ *  @see BitSimulator
+ */
+final class VectorKernel implements WordKernel {
+    private static final VectorSpecies <Long> S = LongVector.SPECIES_PREFERRED;
+
+    // scalar code for what doesn't fill a vector
+    private final ScalarKernel scalar = new ScalarKernel();
+
+    public void run(
+	long[] v, int lanes, int op, int count, int arity,
+	int[] dst, int[] src, long[] mask, long outMask
+    ) {
+	if (lanes >= S.length()) {
+	    wide( v, lanes, op, count, arity, dst, src, mask, outMask );
+	} else if (lanes == 1) {
+	    gather( v, op, count, arity, dst, src, mask, outMask );
+	} else {
+	    scalar.run( v, lanes, op, count, arity, dst, src, mask, outMask );
+	}
+    }
+
+    /** @param op a WordKernel operator
+     *  @return the matching vector operator
+     */
+    private static VectorOperators.Binary operator( int op ) {
+	if (op == AND) return VectorOperators.AND;
+	if (op == OR) return VectorOperators.OR;
+	return VectorOperators.XOR;
+    }
+
+    /** @param op a WordKernel operator
+     *  @return op applied to a and b
+     */
+    private static long apply( int op, long a, long b ) {
+	if (op == AND) return a & b;
+	if (op == OR) return a | b;
+	return a ^ b;
+    }
+
+    /** evaluate each gate a vector of lanes at a time */
+    private void wide(
+	long[] v, int lanes, int op, int count, int arity,
+	int[] dst, int[] src, long[] mask, long outMask
+    ) {
+	VectorOperators.Binary o = operator( op );
+	int bound = S.loopBound( lanes );
+	for (int k = 0; k < count; k++) {
+	    int d = dst[k];
+	    int w = 0;
+	    for (; w < bound; w += S.length()) {
+		LongVector acc = LongVector.fromArray( S, v, src[k] + w )
+		    .lanewise( VectorOperators.XOR, mask[k] );
+		for (int s = 1; s < arity; s++) {
+		    acc = acc.lanewise( o,
+			LongVector.fromArray( S, v, src[s * count + k] + w )
+			    .lanewise( VectorOperators.XOR, mask[s * count + k] )
+		    );
+		}
+		acc.lanewise( VectorOperators.XOR, outMask ).intoArray( v, d + w );
+	    }
+	    for (; w < lanes; w++) {
+		long acc = v[src[k] + w] ^ mask[k];
+		for (int s = 1; s < arity; s++) {
+		    long in = v[src[s * count + k] + w] ^ mask[s * count + k];
+		    acc = apply( op, acc, in );
+		}
+		v[d + w] = acc ^ outMask;
+	    }
+	}
+    }
+
+    /** evaluate a vector of single lane gates at a time */
+    private void gather(
+	long[] v, int op, int count, int arity,
+	int[] dst, int[] src, long[] mask, long outMask
+    ) {
+	VectorOperators.Binary o = operator( op );
+	int bound = S.loopBound( count );
+	int k = 0;
+	for (; k < bound; k += S.length()) {
+	    LongVector acc = LongVector.fromArray( S, v, 0, src, k )
+		.lanewise( VectorOperators.XOR,
+		    LongVector.fromArray( S, mask, k ) );
+	    for (int s = 1; s < arity; s++) {
+		acc = acc.lanewise( o,
+		    LongVector.fromArray( S, v, 0, src, s * count + k )
+			.lanewise( VectorOperators.XOR,
+			    LongVector.fromArray( S, mask, s * count + k ) )
+		);
+	    }
+	    acc.lanewise( VectorOperators.XOR, outMask ).intoArray( v, 0, dst, k );
+	}
+	for (; k < count; k++) {
+	    long acc = v[src[k]] ^ mask[k];
+	    for (int s = 1; s < arity; s++) {
+		long in = v[src[s * count + k]] ^ mask[s * count + k];
+		acc = apply( op, acc, in );
+	    }
+	    v[dst[k]] = acc ^ outMask;
+	}
+    }
+
+    /** Benchmark this kernel against ScalarKernel on a large run of
+     *  random two input and gates, at several lane counts
+     *  usage: java --add-modules jdk.incubator.vector VectorKernel [gates]
+     */
+    public static void main( String[] args ) {
+	int count = (args.length > 0) ? Integer.parseInt( args[0] ) : 100000;
+	WordKernel[] kernels = { new ScalarKernel(), new VectorKernel() };
+	System.out.println( "-- vector species " + S );
+
+	for (int lanes: new int[] { 1, 8, 64 }) {
+	    int signals = 2 * count;
+	    long[] v = new long[(signals + count) * lanes];
+	    java.util.SplittableRandom r = new java.util.SplittableRandom( 5 );
+	    for (int i = 0; i < signals * lanes; i++) v[i] = r.nextLong();
+
+	    int[] dst = new int[count];
+	    int[] src = new int[2 * count];
+	    long[] mask = new long[2 * count];
+	    for (int k = 0; k < count; k++) {
+		dst[k] = (signals + k) * lanes;
+		src[k] = r.nextInt( signals ) * lanes;
+		src[count + k] = r.nextInt( signals ) * lanes;
+		mask[k] = r.nextBoolean() ? -1L : 0L;
+	    }
+
+	    for (WordKernel kernel: kernels) {
+		long best = Long.MAX_VALUE;
+		for (int rep = 0; rep < 50; rep++) {
+		    long start = System.nanoTime();
+		    kernel.run( v, lanes, AND, count, 2, dst, src, mask, 0L );
+		    best = Math.min( best, System.nanoTime() - start );
+		}
+		System.out.println(
+		    kernel.getClass().getName() + " lanes " + lanes + " "
+		    + ((double)best / ((long)count * lanes)) + " ns/word"
+		);
+	    }
+	}
+    }
+}
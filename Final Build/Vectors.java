@@ -0,0 +1,196 @@
+/* Vectors.java
+ * Support class for input vectors of cycle-based simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Scanner;
+
+/** Input vectors assign a value to each input gate of a circuit.
+ *  In a vector file, each line holds one vector, written as a string of
+ *  0 and 1 characters, one per input gate in order of declaration.
+ *  Blank lines and lines starting with -- are ignored.
+ *  Vectors may also be generated, exhaustively or at random.
+ *  Vectors for four-state simulation may also use x for an unknown
+ *  value and z for an input that is not driven.
+ *  @see CycleSimulator
+ *  @see BitSimulator
+ */
+public class Vectors {
+
+    /** read vectors from a vector file
+     *  @param sc the scanner from which the vectors are read
+     *  @param width the number of inputs in each vector
+     *  @return the vectors
+     */
+    public static List <boolean[]> read( Scanner sc, int width ) {
+	List <boolean[]> vectors = new LinkedList <boolean[]> ();
+	while (sc.hasNextLine()) {
+	    String line = sc.nextLine().trim();
+	    if (line.equals( "" ) || line.startsWith( "--" )) continue;
+	    boolean[] v = parse( line, width );
+	    if (v != null) vectors.add( v );
+	}
+	return vectors;
+    }
+
+    /** the characters of four-state values, indexed by value code */
+    public static final String FOUR_STATE = "01xz";
+
+    /** read four-state vectors from a vector file
+     *  @param sc the scanner from which the vectors are read
+     *  @param width the number of inputs in each vector
+     *  @return the vectors, holding indexes into FOUR_STATE
+     */
+    public static List <byte[]> readFourState( Scanner sc, int width ) {
+	List <byte[]> vectors = new LinkedList <byte[]> ();
+	while (sc.hasNextLine()) {
+	    String line = sc.nextLine().trim().toLowerCase();
+	    if (line.equals( "" ) || line.startsWith( "--" )) continue;
+	    if (line.length() != width) {
+		Errors.warn(
+		    "Vector " + line + " should have " + width + " inputs"
+		);
+		continue;
+	    }
+	    byte[] v = new byte[width];
+	    for (int i = 0; i < width; i++) {
+		v[i] = (byte)FOUR_STATE.indexOf( line.charAt( i ) );
+	    }
+	    if (line.matches( "[01xz]*" )) {
+		vectors.add( v );
+	    } else {
+		Errors.warn( "Vector " + line + " is not made of 0, 1, x and z" );
+	    }
+	}
+	return vectors;
+    }
+
+    /** view two-state vectors as four-state vectors
+     *  @param vectors the two-state vectors
+     *  @return the same vectors, converted as they are needed
+     */
+    public static Iterable <byte[]> fourState( final Iterable <boolean[]> vectors ) {
+	return ()-> new Iterator <byte[]> () {
+	    private final Iterator <boolean[]> it = vectors.iterator();
+
+	    public boolean hasNext() {
+		return it.hasNext();
+	    }
+
+	    public byte[] next() {
+		boolean[] b = it.next();
+		byte[] v = new byte[b.length];
+		for (int i = 0; i < b.length; i++) v[i] = (byte)(b[i] ? 1 : 0);
+		return v;
+	    }
+	};
+    }
+
+    /** convert the text of one vector
+     *  @param line the text
+     *  @param width the number of inputs expected
+     *  @return the vector, or null if the text was ill formed
+     */
+    private static boolean[] parse( String line, int width ) {
+	if (line.length() != width) {
+	    Errors.warn(
+		"Vector " + line + " should have " + width + " inputs"
+	    );
+	    return null;
+	}
+	boolean[] v = new boolean[width];
+	for (int i = 0; i < width; i++) {
+	    char c = line.charAt( i );
+	    if ((c != '0') && (c != '1')) {
+		Errors.warn( "Vector " + line + " is not made of 0 and 1" );
+		return null;
+	    }
+	    v[i] = (c == '1');
+	}
+	return v;
+    }
+
+    /** the vector used when none are given, where all inputs are true,
+     *  as all const gates are once they have fired
+     *  @param width the number of inputs
+     *  @return a list holding the one vector
+     */
+    public static List <boolean[]> allTrue( int width ) {
+	List <boolean[]> vectors = new LinkedList <boolean[]> ();
+	boolean[] v = new boolean[width];
+	java.util.Arrays.fill( v, true );
+	vectors.add( v );
+	return vectors;
+    }
+
+    /** all possible vectors, in binary counting order with the first
+     *  input as the most significant bit, generated as they are needed
+     *  @param width the number of inputs, at most 62
+     *  @return the vectors
+     */
+    public static Iterable <boolean[]> exhaustive( final int width ) {
+	return ()-> new Iterator <boolean[]> () {
+	    private long next = 0;
+
+	    public boolean hasNext() {
+		return next < (1L << width);
+	    }
+
+	    public boolean[] next() {
+		boolean[] v = new boolean[width];
+		for (int i = 0; i < width; i++) {
+		    v[i] = ((next >> (width - 1 - i)) & 1) != 0;
+		}
+		next = next + 1;
+		return v;
+	    }
+	};
+    }
+
+    /** random vectors drawn from PRNG, generated as they are needed
+     *  @param width the number of inputs
+     *  @param count the number of vectors
+     *  @return the vectors
+     *  @see PRNG
+     */
+    public static Iterable <boolean[]> random( final int width, final long count ) {
+	return ()-> new Iterator <boolean[]> () {
+	    private long made = 0;
+
+	    public boolean hasNext() {
+		return made < count;
+	    }
+
+	    public boolean[] next() {
+		boolean[] v = new boolean[width];
+		for (int i = 0; i < width; i++) v[i] = PRNG.fromZeroTo( 2 ) == 1;
+		made = made + 1;
+		return v;
+	    }
+	};
+    }
+
+    /** convert a vector or a set of values to text
+     *  @param v the values
+     *  @return a string of 0 and 1 characters
+     */
+    public static String toString( boolean[] v ) {
+	StringBuilder s = new StringBuilder( v.length );
+	for (boolean b: v) s.append( b ? '1' : '0' );
+	return s.toString();
+    }
+
+    /** convert a four-state vector or set of values to text
+     *  @param v the values, indexes into FOUR_STATE
+     *  @return a string of 0, 1, x and z characters
+     */
+    public static String toString( byte[] v ) {
+	StringBuilder s = new StringBuilder( v.length );
+	for (byte b: v) s.append( FOUR_STATE.charAt( b ) );
+	return s.toString();
+    }
+}
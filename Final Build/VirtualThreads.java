@@ -0,0 +1,25 @@
+/* VirtualThreads.java
+ * The executor batch mode uses when virtual threads are available
+ * This needs JDK 21, so it is not listed in classes; compile it with
+ * javac VirtualThreads.java
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Runs each batch simulation on a virtual thread of its own.  Batch
+ *  loads this class by name and falls back to a pool of platform
+ *  threads when it is not there, or the JDK is too old to load it.
+ *  @see Batch
+ */
+final class VirtualThreads {
+    private VirtualThreads() {}
+
+    /** @return an executor starting a virtual thread per task
+     */
+    static ExecutorService executor() {
+	return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
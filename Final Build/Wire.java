@@ -26,6 +26,9 @@ public class Wire {
     // note, wires don't understand pin numbers, only gates do.
     // note, by convention -1 is an illegal pin number.
 
+    // the number of this wire in declaration order, set by Logic
+    int id = -1;
+
     /** construct a new wire by scanning its description from the source file
      *  @param sc the scanner from which the wire description is scanned
      *  @see ScanSupport for the tools used to access the scanner
@@ -107,6 +110,33 @@ public class Wire {
 		+ delay;
     }
 
+    // Accessors used to build compact representations of the circuit
+
+    /** @return the gate this wire comes from */
+    Gate source() {
+	return source;
+    }
+
+    /** @return the pin number of the source gate */
+    int srcPin() {
+	return srcPin;
+    }
+
+    /** @return the gate this wire goes to */
+    Gate destination() {
+	return destination;
+    }
+
+    /** @return the pin number of the destination gate */
+    int dstPin() {
+	return dstPin;
+    }
+
+    /** @return the delay of this wire, in seconds */
+    float delay() {
+	return delay;
+    }
+
     // Simulation methods
 
     /** Simulate an input change on this wire
@@ -115,7 +145,7 @@ public class Wire {
      *  schedules an output change event after the wire's delay.
      *  @see outputChangeEvent
      */
-    public void inputChangeEvent( float time, boolean v ) {
+    public void inputChangeEvent( float time, int v ) {
         Simulator.schedule(
             new Simulator.Event( time + delay){
 	    	void trigger(){
@@ -131,7 +161,8 @@ public class Wire {
      *  Passes the new value to the input of the gate to which this wire goes.
      *  @see Gate.inputChangeEvent
      */
-    private void outputChangeEvent( float time, boolean v ) {
+    private void outputChangeEvent( float time, int v ) {
+	if (ActivityProfile.on) ActivityProfile.delivered( this );
 	destination.inputChangeEvent( time, dstPin, v );
     }
 
@@ -0,0 +1,38 @@
+/* WordKernel.java
+ * Evaluation kernels for bit-parallel simulation
+ *
+ * Bug notices in the code indicate unsolved problems
+ */
+
+/** A word kernel evaluates a run of gates that all have the same kind
+ *  and the same number of inputs.  Signals are held in a long array,
+ *  lanes words per signal, as in BitSimulator.  For gate k of a run of
+ *  count gates, input slot s is the signal starting at word
+ *  src[s*count+k], complemented by xor with mask[s*count+k]; the
+ *  inputs are combined with the run's operator, the result is xored
+ *  with outMask and stored in the signal starting at word dst[k].
+ *  @see BitSimulator
+ *  @see ScalarKernel
+ */
+public interface WordKernel {
+    // operators
+    public static final int AND = 0;
+    public static final int OR = 1;
+    public static final int XOR = 2;
+
+    /** evaluate a run of gates
+     *  @param v the signal words
+     *  @param lanes the number of words per signal
+     *  @param op the operator, AND, OR or XOR
+     *  @param count the number of gates in the run
+     *  @param arity the number of inputs of each gate
+     *  @param dst the first word of each gate's output
+     *  @param src the first word of each gate's inputs, slot by slot
+     *  @param mask the complement mask of each gate's inputs, slot by slot
+     *  @param outMask the complement mask of the outputs
+     */
+    public void run(
+	long[] v, int lanes, int op, int count, int arity,
+	int[] dst, int[] src, long[] mask, long outMask
+    );
+}